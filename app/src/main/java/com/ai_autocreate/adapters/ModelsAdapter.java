@@ -9,6 +9,8 @@ import android.widget.Button;
 import android.widget.TextView;
 
 import com.ai_autocreate.R;
+import com.ai_autocreate.utils.EndpointHealth;
+import com.ai_autocreate.utils.HFClient;
 
 import org.json.JSONObject;
 
@@ -88,7 +90,7 @@ public class ModelsAdapter extends BaseAdapter {
             holder.typeText.setText(model.optString("type", ""));
             holder.categoryText.setText(model.optString("category", ""));
             String status = model.optString("status", "unknown");
-            holder.statusText.setText(status);
+            holder.statusText.setText(status + getCircuitSuffix(model));
 
             boolean isTesting = "testing".equals(status);
             holder.testButton.setEnabled(!isTesting);
@@ -124,6 +126,20 @@ public class ModelsAdapter extends BaseAdapter {
         return convertView;
     }
 
+    // Surfaces an open or recovering circuit next to the last validation status
+    private String getCircuitSuffix(JSONObject model) {
+        JSONObject health = HFClient.getEndpointHealth(model.optString("endpoint", ""));
+        if (health == null) {
+            return "";
+        }
+
+        String state = health.optString("state", EndpointHealth.STATE_CLOSED);
+        if (EndpointHealth.STATE_CLOSED.equals(state)) {
+            return "";
+        }
+        return " (circuit " + state.replace('_', '-') + ")";
+    }
+
     // Helper to update data from Activity
     public void updateData(List<JSONObject> newModels) {
         this.models = newModels != null ? new ArrayList<JSONObject>(newModels) : new ArrayList<JSONObject>();
@@ -8,6 +8,8 @@ import android.os.AsyncTask;
 import com.ai_autocreate.utils.HFClient;
 import com.ai_autocreate.utils.JSONLogger;
 import com.ai_autocreate.utils.MediaUtils;
+import com.ai_autocreate.utils.ModelsConfig;
+import com.ai_autocreate.utils.ParallelRunner;
 import com.ai_autocreate.utils.StoragePaths;
 
 import org.json.JSONException;
@@ -22,6 +24,8 @@ import java.util.List;
 import java.util.Locale;
 
 public class ImageInterpreterAgent {
+    private static final int DEFAULT_ANALYSIS_CONCURRENCY = 8;
+
     private Context context;
     private JSONLogger logger;
     private HFClient hfClient;
@@ -62,8 +66,8 @@ public class ImageInterpreterAgent {
             // Get default image model
             String modelEndpoint = getDefaultModelEndpoint();
 
-            // Make request
-            JSONObject response = hfClient.requestModel(modelEndpoint, "", payload);
+            // Make request; concurrent analyses share one batched call to the model
+            JSONObject response = hfClient.requestModelBatched(modelEndpoint, "", payload);
 
             if (response != null && response.has("0")) {
                 JSONArray generatedText = response.getJSONArray("0");
@@ -106,6 +110,25 @@ public class ImageInterpreterAgent {
         }
     }
 
+    // Analyzes many images (e.g. extracted frames) concurrently so their model calls can be batched.
+    // Results are in input order.
+    public List<JSONObject> analyzeImages(final List<String> imagePaths) throws InterruptedException {
+        // One full batch in flight at a time
+        return ParallelRunner.runOrdered(imagePaths.size(), getMaxBatchSize(),
+            new ParallelRunner.IndexedTask<JSONObject>() {
+                @Override
+                public JSONObject run(int index) {
+                    return analyzeImage(imagePaths.get(index));
+                }
+            }, null);
+    }
+
+    private int getMaxBatchSize() {
+        JSONObject model = ModelsConfig.getInstance().findModelByEndpoint(getDefaultModelEndpoint());
+        int value = model != null ? model.optInt("max_batch_size", DEFAULT_ANALYSIS_CONCURRENCY) : DEFAULT_ANALYSIS_CONCURRENCY;
+        return Math.max(1, value);
+    }
+
     public void analyzeImageAsync(String imagePath, AnalysisCallback callback) {
         new AnalyzeImageTask(imagePath, callback).execute();
     }
@@ -3,6 +3,7 @@ package com.ai_autocreate.agents;
 import android.content.Context;
 import android.os.AsyncTask;
 
+import com.ai_autocreate.utils.EndpointHealth;
 import com.ai_autocreate.utils.HFClient;
 import com.ai_autocreate.utils.JSONLogger;
 
@@ -35,14 +36,18 @@ public class ModelValidatorAgent {
             // Create test payload based on model type
             JSONObject testPayload = createTestPayload(type);
 
-            // Make test request
+            // Make test request; a validation must reach the endpoint, never the response cache
             HFClient client = new HFClient(context);
-            JSONObject response = client.requestModel(endpoint, apiKey, testPayload);
+            JSONObject response = client.requestModel(endpoint, apiKey, testPayload,
+                                                      new HFClient.RequestOptions().setBypassCache(true));
 
             if (response != null) {
                 // Log successful validation
                 logValidationResult(model, true, "Model validated successfully");
                 return true;
+            } else if (EndpointHealth.STATE_OPEN.equals(getEndpointState(endpoint))) {
+                logValidationResult(model, false, "Endpoint circuit is open after repeated failures");
+                return false;
             } else {
                 // Log failed validation
                 logValidationResult(model, false, "Failed to get response from model");
@@ -55,6 +60,16 @@ public class ModelValidatorAgent {
         }
     }
 
+    // Rolling health of the model's endpoint, or null if it has not been called yet
+    public JSONObject getEndpointHealth(JSONObject model) {
+        return HFClient.getEndpointHealth(model.optString("endpoint", ""));
+    }
+
+    private String getEndpointState(String endpoint) {
+        JSONObject health = HFClient.getEndpointHealth(endpoint);
+        return health != null ? health.optString("state", EndpointHealth.STATE_CLOSED) : EndpointHealth.STATE_CLOSED;
+    }
+
     private JSONObject createTestPayload(String type) throws JSONException {
         JSONObject payload = new JSONObject();
 
@@ -87,6 +102,12 @@ public class ModelValidatorAgent {
             logEntry.put("endpoint", model.getString("endpoint"));
             logEntry.put("is_valid", isValid);
             logEntry.put("message", message);
+
+            JSONObject health = getEndpointHealth(model);
+            if (health != null) {
+                logEntry.put("endpoint_health", health);
+            }
+
             logEntry.put("timestamp", System.currentTimeMillis());
 
             logger.log("ModelValidator", logEntry.toString());
@@ -3,10 +3,17 @@ package com.ai_autocreate.agents;
 import android.content.Context;
 import android.os.AsyncTask;
 
+import com.ai_autocreate.utils.CancellationToken;
+import com.ai_autocreate.utils.FFmpegRunner;
 import com.ai_autocreate.utils.FileUtils;
 import com.ai_autocreate.utils.HFClient;
 import com.ai_autocreate.utils.JSONLogger;
+import com.ai_autocreate.utils.ModelsConfig;
+import com.ai_autocreate.utils.ParallelRunner;
+import com.ai_autocreate.utils.ProjectCheckpoint;
+import com.ai_autocreate.utils.StageGraph;
 import com.ai_autocreate.utils.StoragePaths;
+import com.ai_autocreate.utils.VideoAssembler;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -14,12 +21,19 @@ import org.json.JSONObject;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Future;
 
 public class OrchestratorAgent {
+    private static final int DEFAULT_MODEL_CONCURRENCY = 4;
+
     private Context context;
     private JSONLogger logger;
     private HFClient hfClient;
+    private ProgressListener progressListener;
 
     public OrchestratorAgent(Context context) {
         this.context = context;
@@ -27,11 +41,41 @@ public class OrchestratorAgent {
         this.hfClient = new HFClient(context);
     }
 
+    public interface ProgressListener {
+        void onStepProgress(String stepId, int completed, int total);
+    }
+
+    public void setProgressListener(ProgressListener listener) {
+        this.progressListener = listener;
+    }
+
     public JSONObject process(JSONObject input) {
+        return process(input, CancellationToken.NONE);
+    }
+
+    // Cancelling the token aborts model calls in flight, skips the remaining steps and returns
+    // a failed result with "cancelled": true. Completed steps, scene images and dialogue clips
+    // are checkpointed, so running the same project again only does the work that is missing.
+    public JSONObject process(JSONObject input, final CancellationToken token) {
+        SceneImagePipeline pipeline = null;
+
         try {
-            String projectId = input.getString("project_id");
-            String prompt = input.getString("prompt");
+            final String projectId = input.getString("project_id");
+            final String prompt = input.getString("prompt");
             JSONObject projectConfig = input.getJSONObject("project_config");
+            final ProjectCheckpoint checkpoint = new ProjectCheckpoint(projectId);
+
+            // In streaming mode scene images start while the script is still being generated
+            final SceneImagePipeline scenePipeline = projectConfig.optBoolean("stream_script", true)
+                ? new SceneImagePipeline(getDefaultModelEndpoint("image"), new File(StoragePaths.getProjectFramesDir(projectId)),
+                                         checkpoint, token)
+                : null;
+            pipeline = scenePipeline;
+
+            // Opt-in: slow text requests are raced against an equivalent text model
+            final HFClient.RequestOptions textOptions = new HFClient.RequestOptions()
+                .setHedged(projectConfig.optBoolean("hedge_requests", false))
+                .setCancellationToken(token);
 
             // Create result object
             JSONObject result = new JSONObject();
@@ -39,62 +83,82 @@ public class OrchestratorAgent {
             result.put("project_id", projectId);
             result.put("success", false);
 
-            // Create steps array
+            // Each step declares the steps it consumes; images and audio only
+            // depend on the script, so they run concurrently
+            StageGraph graph = new StageGraph()
+                .addStage("analyze_prompt", new StageGraph.StageTask() {
+                        @Override
+                        public JSONObject run(Map<String, JSONObject> inputs) {
+                            JSONObject done = checkpoint.loadStep("analyze_prompt", prompt);
+                            if (done != null) {
+                                return done;
+                            }
+                            return saveStepIfSucceeded(checkpoint, prompt, analyzePrompt(prompt, textOptions));
+                        }
+                    })
+                .addStage("generate_script", new StageGraph.StageTask() {
+                        @Override
+                        public JSONObject run(Map<String, JSONObject> inputs) {
+                            JSONObject analysis = inputs.get("analyze_prompt").optJSONObject("analysis");
+                            String scriptInput = prompt + "\n" + (analysis != null ? analysis.optString("text", "") : "");
+
+                            JSONObject done = checkpoint.loadStep("generate_script", scriptInput);
+                            if (done != null) {
+                                // Queue the saved script's scenes; their images come from checkpoints too
+                                if (scenePipeline != null) {
+                                    JSONObject script = done.optJSONObject("script");
+                                    scenePipeline.onScriptText(script != null ? script.optString("text", "") : "");
+                                    scenePipeline.finishScript();
+                                }
+                                return done;
+                            }
+                            return saveStepIfSucceeded(checkpoint, scriptInput,
+                                                       generateScript(prompt, analysis, scenePipeline, textOptions));
+                        }
+                    }, "analyze_prompt")
+                .addStage("generate_images", new StageGraph.StageTask() {
+                        @Override
+                        public JSONObject run(Map<String, JSONObject> inputs) {
+                            return generateImages(projectId, inputs.get("generate_script").optJSONObject("script"), scenePipeline,
+                                                  checkpoint, token);
+                        }
+                    }, "generate_script")
+                .addStage("generate_audio", new StageGraph.StageTask() {
+                        @Override
+                        public JSONObject run(Map<String, JSONObject> inputs) {
+                            return generateAudio(projectId, inputs.get("generate_script").optJSONObject("script"), checkpoint, token);
+                        }
+                    }, "generate_script")
+                .addStage("assemble_video", new StageGraph.StageTask() {
+                        @Override
+                        public JSONObject run(Map<String, JSONObject> inputs) {
+                            return assembleVideo(projectId, inputs.get("generate_images"), inputs.get("generate_audio"), token);
+                        }
+                    }, "generate_images", "generate_audio");
+
+            StageGraph.Result graphResult = graph.run(token);
+
+            // Create steps array in declaration order
             JSONArray steps = new JSONArray();
-
-            // Step 1: Analyze prompt
-            JSONObject analyzeStep = analyzePrompt(prompt);
-            steps.put(analyzeStep);
-
-            if (!analyzeStep.optBoolean("success", false)) {
-                result.put("message", "Failed to analyze prompt: " + analyzeStep.optString("message", "Unknown error"));
-                logResult(result);
-                return result;
-            }
-
-            // Step 2: Generate script
-            JSONObject scriptStep = generateScript(prompt, analyzeStep.optJSONObject("analysis"));
-            steps.put(scriptStep);
-
-            if (!scriptStep.optBoolean("success", false)) {
-                result.put("message", "Failed to generate script: " + scriptStep.optString("message", "Unknown error"));
-                logResult(result);
-                return result;
-            }
-
-            // Step 3: Generate images
-            JSONObject imagesStep = generateImages(scriptStep.optJSONObject("script"));
-            steps.put(imagesStep);
-
-            if (!imagesStep.optBoolean("success", false)) {
-                result.put("message", "Failed to generate images: " + imagesStep.optString("message", "Unknown error"));
-                logResult(result);
-                return result;
-            }
-
-            // Step 4: Generate audio
-            JSONObject audioStep = generateAudio(scriptStep.optJSONObject("script"));
-            steps.put(audioStep);
-
-            if (!audioStep.optBoolean("success", false)) {
-                result.put("message", "Failed to generate audio: " + audioStep.optString("message", "Unknown error"));
-                logResult(result);
-                return result;
+            for (JSONObject step : graphResult.getOrderedOutputs()) {
+                steps.put(step);
             }
+            result.put("steps", steps);
 
-            // Step 5: Assemble final video
-            JSONObject assembleStep = assembleVideo(projectId);
-            steps.put(assembleStep);
+            if (!graphResult.isSuccess()) {
+                if (scenePipeline != null) {
+                    scenePipeline.cancel();
+                }
 
-            if (!assembleStep.optBoolean("success", false)) {
-                result.put("message", "Failed to assemble video: " + assembleStep.optString("message", "Unknown error"));
+                String failedStageId = graphResult.getFailedStageId();
+                JSONObject failedStep = graphResult.getOutput(failedStageId);
+                result.put("message", getStepFailurePrefix(failedStageId) + ": " + failedStep.optString("message", "Unknown error"));
                 logResult(result);
                 return result;
             }
 
             // All steps completed successfully
             result.put("success", true);
-            result.put("steps", steps);
             result.put("message", "All steps completed successfully");
 
             logResult(result);
@@ -102,20 +166,70 @@ public class OrchestratorAgent {
 
         } catch (JSONException e) {
             logger.log("OrchestratorAgent", "Error processing input: " + e.getMessage());
+            return createErrorResult("Error processing input: " + e.getMessage());
+        } catch (InterruptedException e) {
+            if (pipeline != null) {
+                pipeline.cancel();
+            }
+            if (token.isCancelled()) {
+                logger.log("OrchestratorAgent", "Processing cancelled");
+                return createCancelledResult();
+            }
+            Thread.currentThread().interrupt();
+            logger.log("OrchestratorAgent", "Processing interrupted");
+            return createErrorResult("Processing interrupted");
+        }
+    }
+
+    private JSONObject saveStepIfSucceeded(ProjectCheckpoint checkpoint, String input, JSONObject step) {
+        if (step.optBoolean("success", false)) {
+            checkpoint.saveStep(step.optString("step_id"), input, step);
+        }
+        return step;
+    }
 
+    private JSONObject createCancelledResult() {
+        JSONObject result = createErrorResult("Processing cancelled");
+        if (result != null) {
             try {
-                JSONObject errorResult = new JSONObject();
-                errorResult.put("agent", "OrchestratorAgent");
-                errorResult.put("success", false);
-                errorResult.put("message", "Error processing input: " + e.getMessage());
-                return errorResult;
-            } catch (JSONException ex) {
-                return null;
+                result.put("cancelled", true);
+            } catch (JSONException e) {
+                // Ignore
             }
         }
+        return result;
+    }
+
+    private JSONObject createErrorResult(String message) {
+        try {
+            JSONObject errorResult = new JSONObject();
+            errorResult.put("agent", "OrchestratorAgent");
+            errorResult.put("success", false);
+            errorResult.put("message", message);
+            return errorResult;
+        } catch (JSONException ex) {
+            return null;
+        }
+    }
+
+    private String getStepFailurePrefix(String stepId) {
+        switch (stepId) {
+            case "analyze_prompt":
+                return "Failed to analyze prompt";
+            case "generate_script":
+                return "Failed to generate script";
+            case "generate_images":
+                return "Failed to generate images";
+            case "generate_audio":
+                return "Failed to generate audio";
+            case "assemble_video":
+                return "Failed to assemble video";
+            default:
+                return "Failed to run " + stepId;
+        }
     }
 
-    private JSONObject analyzePrompt(String prompt) {
+    private JSONObject analyzePrompt(String prompt, HFClient.RequestOptions options) {
         JSONObject step = new JSONObject();
 
         try {
@@ -133,7 +247,7 @@ public class OrchestratorAgent {
             String modelEndpoint = getDefaultModelEndpoint("text");
 
             // Make request
-            JSONObject response = hfClient.requestModel(modelEndpoint, "", payload);
+            JSONObject response = hfClient.requestModel(modelEndpoint, "", payload, options);
 
             if (response != null && response.has("0")) {
                 JSONArray generatedText = response.getJSONArray("0");
@@ -166,7 +280,8 @@ public class OrchestratorAgent {
         return step;
     }
 
-    private JSONObject generateScript(String prompt, JSONObject analysis) {
+    private JSONObject generateScript(String prompt, JSONObject analysis, final SceneImagePipeline scenePipeline,
+                                      HFClient.RequestOptions options) {
         JSONObject step = new JSONObject();
 
         try {
@@ -189,14 +304,38 @@ public class OrchestratorAgent {
             // Get default text model
             String modelEndpoint = getDefaultModelEndpoint("text");
 
-            // Make request
-            JSONObject response = hfClient.requestModel(modelEndpoint, "", payload);
+            // Make request; in streaming mode every completed SCENE: line is queued for image generation
+            JSONObject response = null;
+            boolean streamed = false;
+            if (scenePipeline != null) {
+                response = hfClient.requestModelStream(modelEndpoint, "", payload, new HFClient.StreamListener() {
+                        @Override
+                        public void onText(String text) {
+                            scenePipeline.onScriptText(text);
+                        }
+                    }, options.getCancellationToken());
+                streamed = response != null;
+            }
+
+            // A stream that broke off falls back to a whole response; scenes it already queued are kept
+
+            if (!streamed && !options.getCancellationToken().isCancelled()) {
+                if (scenePipeline != null) {
+                    scenePipeline.discardPartialText();
+                }
+                response = hfClient.requestModel(modelEndpoint, "", payload, options);
+            }
 
             if (response != null && response.has("0")) {
                 JSONArray generatedText = response.getJSONArray("0");
                 if (generatedText.length() > 0 && generatedText.getJSONObject(0).has("generated_text")) {
                     String scriptText = generatedText.getJSONObject(0).getString("generated_text");
 
+                    // The non-streaming fallback produced the whole script at once
+                    if (scenePipeline != null && !streamed) {
+                        scenePipeline.onFallbackScript(scriptText);
+                    }
+
                     // Create script object
                     JSONObject scriptObj = new JSONObject();
                     scriptObj.put("text", scriptText);
@@ -225,18 +364,30 @@ public class OrchestratorAgent {
             } catch (JSONException ex) {
                 // Ignore
             }
+        } finally {
+            // Flush the trailing line so image generation knows no more scenes are coming
+            if (scenePipeline != null) {
+                scenePipeline.finishScript();
+            }
         }
 
         return step;
     }
 
-    private JSONObject generateImages(JSONObject script) {
+    private JSONObject generateImages(String projectId, JSONObject script, SceneImagePipeline scenePipeline,
+                                      final ProjectCheckpoint checkpoint, final CancellationToken token) {
         JSONObject step = new JSONObject();
 
         try {
             step.put("step_id", "generate_images");
             step.put("success", false);
 
+            // Scenes were already queued while the script streamed in; just wait for them
+            if (scenePipeline != null) {
+                putImageResults(step, scenePipeline.awaitResults());
+                return step;
+            }
+
             // Extract image prompts from script
             List<String> imagePrompts = new ArrayList<>();
             if (script != null && script.has("scenes")) {
@@ -250,35 +401,27 @@ public class OrchestratorAgent {
                 }
             }
 
-            // Generate images for each prompt
-            JSONArray generatedImages = new JSONArray();
-            for (int i = 0; i < imagePrompts.size(); i++) {
-                String prompt = imagePrompts.get(i);
-
-                // Create image generation payload
-                JSONObject payload = new JSONObject();
-                payload.put("inputs", prompt);
-
-                // Get default image model
-                String modelEndpoint = getDefaultModelEndpoint("image");
-
-                // Make request
-                JSONObject response = hfClient.requestModel(modelEndpoint, "", payload);
-
-                if (response != null) {
-                    // In a real implementation, this would handle the image data
-                    // For now, we'll just create a placeholder
-                    JSONObject imageInfo = new JSONObject();
-                    imageInfo.put("prompt", prompt);
-                    imageInfo.put("index", i);
-                    imageInfo.put("generated", true);
-                    generatedImages.put(imageInfo);
-                }
-            }
+            // Generate images for all scenes in parallel, bounded by the model's concurrency limit
+            final String modelEndpoint = getDefaultModelEndpoint("image");
+            final List<String> prompts = imagePrompts;
+            final File framesDir = new File(StoragePaths.getProjectFramesDir(projectId));
+            int concurrency = ModelsConfig.getInstance().getMaxConcurrency(modelEndpoint, DEFAULT_MODEL_CONCURRENCY);
+
+            List<JSONObject> sceneResults = ParallelRunner.runOrdered(prompts.size(), concurrency,
+                new ParallelRunner.IndexedTask<JSONObject>() {
+                    @Override
+                    public JSONObject run(int index) throws Exception {
+                        return generateSceneImage(modelEndpoint, framesDir, prompts.get(index), index, checkpoint, token);
+                    }
+                },
+                new ParallelRunner.ProgressListener() {
+                    @Override
+                    public void onProgress(int index, int completed, int total) {
+                        reportProgress("generate_images", completed, total);
+                    }
+                }, token);
 
-            step.put("success", true);
-            step.put("images", generatedImages);
-            step.put("message", "Images generated successfully");
+            putImageResults(step, sceneResults);
 
         } catch (JSONException e) {
             logger.log("OrchestratorAgent", "Error generating images: " + e.getMessage());
@@ -287,12 +430,84 @@ public class OrchestratorAgent {
             } catch (JSONException ex) {
                 // Ignore
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            try {
+                step.put("message", "Image generation interrupted");
+            } catch (JSONException ex) {
+                // Ignore
+            }
         }
 
         return step;
     }
 
-    private JSONObject generateAudio(JSONObject script) {
+    // Results are in scene order with null for scenes that failed. Those are skipped, and the
+    // step only fails when no scene has an image at all.
+    private void putImageResults(JSONObject step, List<JSONObject> sceneResults) throws JSONException {
+        JSONArray generatedImages = new JSONArray();
+        for (JSONObject imageInfo : sceneResults) {
+            if (imageInfo != null) {
+                generatedImages.put(imageInfo);
+            }
+        }
+
+        int failed = sceneResults.size() - generatedImages.length();
+        step.put("images", generatedImages);
+        step.put("failed_scenes", failed);
+
+        if (generatedImages.length() == 0) {
+            step.put("message", sceneResults.isEmpty() ? "The script has no scenes to illustrate"
+                     : "No scene image could be generated");
+        } else if (failed > 0) {
+            step.put("success", true);
+            step.put("message", "Generated " + generatedImages.length() + " of " + sceneResults.size() + " scene images");
+        } else {
+            step.put("success", true);
+            step.put("message", "Images generated successfully");
+        }
+    }
+
+    private JSONObject generateSceneImage(String modelEndpoint, File framesDir, String prompt, int index,
+                                          ProjectCheckpoint checkpoint, CancellationToken token) throws JSONException {
+        // Already generated before a pause or crash
+        JSONObject done = checkpoint.loadUnit("image", index, prompt);
+        if (done != null) {
+            return done;
+        }
+
+        // Create image generation payload
+        JSONObject payload = new JSONObject();
+        payload.put("inputs", prompt);
+
+        // Stream the image bytes straight into the project's frames directory
+        File frameBase = new File(framesDir, String.format(Locale.US, "scene_%03d", index));
+        JSONObject download = hfClient.requestToFile(modelEndpoint, "", payload, frameBase, token);
+
+        if (download == null) {
+            return null;
+        }
+
+        JSONObject imageInfo = new JSONObject();
+        imageInfo.put("prompt", prompt);
+        imageInfo.put("index", index);
+        imageInfo.put("generated", true);
+        if (download.optBoolean("binary", false)) {
+            imageInfo.put("path", download.getString("path"));
+            imageInfo.put("content_type", download.optString("content_type", ""));
+            imageInfo.put("size", download.optLong("size", 0));
+        } else {
+            // The model answered with JSON instead of an image; keep it next to the frames
+            File responseFile = new File(frameBase.getPath() + ".json");
+            JSONLogger.writeToFile(responseFile, download.getJSONObject("response").toString());
+            imageInfo.put("path", responseFile.getAbsolutePath());
+        }
+        checkpoint.saveUnit("image", index, prompt, imageInfo);
+        return imageInfo;
+    }
+
+    private JSONObject generateAudio(final String projectId, JSONObject script, final ProjectCheckpoint checkpoint,
+                                     final CancellationToken token) {
         JSONObject step = new JSONObject();
 
         try {
@@ -311,35 +526,57 @@ public class OrchestratorAgent {
                 }
             }
 
-            // Generate audio for each dialogue line
+            // Synthesize all dialogue lines in parallel; each clip is written as soon as it arrives
+            final String modelEndpoint = getDefaultModelEndpoint("audio");
+            final List<String> lines = dialogueLines;
+            final File audioDir = new File(StoragePaths.getProjectAudioDir(projectId));
+            int concurrency = ModelsConfig.getInstance().getMaxConcurrency(modelEndpoint, DEFAULT_MODEL_CONCURRENCY);
+
+            List<JSONObject> lineResults = ParallelRunner.runOrdered(lines.size(), concurrency,
+                new ParallelRunner.IndexedTask<JSONObject>() {
+                    @Override
+                    public JSONObject run(int index) throws Exception {
+                        return generateDialogueClip(modelEndpoint, audioDir, lines.get(index), index, checkpoint, token);
+                    }
+                },
+                new ParallelRunner.ProgressListener() {
+                    @Override
+                    public void onProgress(int index, int completed, int total) {
+                        reportProgress("generate_audio", completed, total);
+                    }
+                }, token);
+
+            // Reassemble clips in script order and record the order for assembly
             JSONArray generatedAudio = new JSONArray();
-            for (int i = 0; i < dialogueLines.size(); i++) {
-                String line = dialogueLines.get(i);
-
-                // Create TTS payload
-                JSONObject payload = new JSONObject();
-                payload.put("inputs", line);
-
-                // Get default audio model
-                String modelEndpoint = getDefaultModelEndpoint("audio");
-
-                // Make request
-                JSONObject response = hfClient.requestModel(modelEndpoint, "", payload);
-
-                if (response != null) {
-                    // In a real implementation, this would handle the audio data
-                    // For now, we'll just create a placeholder
-                    JSONObject audioInfo = new JSONObject();
-                    audioInfo.put("text", line);
-                    audioInfo.put("index", i);
-                    audioInfo.put("generated", true);
+            for (JSONObject audioInfo : lineResults) {
+                if (audioInfo != null) {
                     generatedAudio.put(audioInfo);
                 }
             }
 
-            step.put("success", true);
+            int failed = lineResults.size() - generatedAudio.length();
             step.put("audio", generatedAudio);
-            step.put("message", "Audio generated successfully");
+            step.put("failed_clips", failed);
+
+            // A script without dialogue is voiced by nothing; lines that all failed fail the step
+            if (!lines.isEmpty() && generatedAudio.length() == 0) {
+                step.put("message", "No dialogue clip could be generated");
+                return step;
+            }
+
+            JSONObject manifest = new JSONObject();
+            manifest.put("project_id", projectId);
+            manifest.put("clips", generatedAudio);
+            JSONLogger.writeToFile(new File(audioDir, "dialogue_manifest.json"), manifest.toString());
+
+            step.put("success", true);
+            if (lines.isEmpty()) {
+                step.put("message", "The script has no dialogue to voice");
+            } else if (failed > 0) {
+                step.put("message", "Generated " + generatedAudio.length() + " of " + lineResults.size() + " clips");
+            } else {
+                step.put("message", "Audio generated successfully");
+            }
 
         } catch (JSONException e) {
             logger.log("OrchestratorAgent", "Error generating audio: " + e.getMessage());
@@ -348,30 +585,104 @@ public class OrchestratorAgent {
             } catch (JSONException ex) {
                 // Ignore
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            try {
+                step.put("message", "Audio generation interrupted");
+            } catch (JSONException ex) {
+                // Ignore
+            }
         }
 
         return step;
     }
 
-    private JSONObject assembleVideo(String projectId) {
+    private JSONObject generateDialogueClip(String modelEndpoint, File audioDir, String line, int index,
+                                            ProjectCheckpoint checkpoint, CancellationToken token) throws JSONException {
+        // Already synthesized before a pause or crash
+        JSONObject done = checkpoint.loadUnit("audio", index, line);
+        if (done != null) {
+            return done;
+        }
+
+        // Create TTS payload
+        JSONObject payload = new JSONObject();
+        payload.put("inputs", line);
+
+        // Stream the clip straight to disk instead of holding it on the heap
+        File clipBase = new File(audioDir, String.format(Locale.US, "dialogue_%03d", index));
+        JSONObject download = hfClient.requestToFile(modelEndpoint, "", payload, clipBase, token);
+
+        if (download == null) {
+            return null;
+        }
+
+        JSONObject audioInfo = new JSONObject();
+        audioInfo.put("text", line);
+        audioInfo.put("index", index);
+        audioInfo.put("generated", true);
+        if (download.optBoolean("binary", false)) {
+            audioInfo.put("path", download.getString("path"));
+            audioInfo.put("content_type", download.optString("content_type", ""));
+            audioInfo.put("size", download.optLong("size", 0));
+        } else {
+            // The model answered with JSON instead of audio; keep the response as the clip record
+            File clipFile = new File(clipBase.getPath() + ".json");
+            JSONLogger.writeToFile(clipFile, download.getJSONObject("response").toString());
+            audioInfo.put("path", clipFile.getAbsolutePath());
+        }
+        checkpoint.saveUnit("audio", index, line, audioInfo);
+        return audioInfo;
+    }
+
+    private JSONObject assembleVideo(String projectId, JSONObject imagesStep, JSONObject audioStep, CancellationToken token) {
         JSONObject step = new JSONObject();
 
         try {
             step.put("step_id", "assemble_video");
             step.put("success", false);
 
-            // In a real implementation, this would use FFmpeg to assemble the video
-            // For now, we'll just create a placeholder
-
-            // Create placeholder for final video
-            File projectDir = new File(StoragePaths.getProjectsDir() + "/" + projectId);
+            File projectDir = new File(StoragePaths.getProjectDir(projectId));
             File finalVideo = new File(projectDir, "final_video.mp4");
 
-            // Simulate video assembly
-            Thread.sleep(2000);
+            List<VideoAssembler.Segment> segments = buildSegments(imagesStep.optJSONArray("images"), audioStep.optJSONArray("audio"));
+            if (segments.isEmpty()) {
+                step.put("message", "No scene images to assemble");
+                return step;
+            }
+
+            FFmpegRunner ffmpegRunner = new FFmpegRunner(context);
+            if (!ffmpegRunner.isFFmpegAvailable()) {
+                // The sanity check only warns about FFmpeg; keep the generated media without a video
+                step.put("success", true);
+                step.put("assembled", false);
+                step.put("message", "FFmpeg not available, video not assembled");
+                return step;
+            }
+
+            // Scenes are encoded in parallel and joined without re-encoding; unchanged scenes are reused
+            JSONObject assembly = new VideoAssembler(context, ffmpegRunner).assemble(projectId, segments, finalVideo,
+                new VideoAssembler.ProgressListener() {
+                    @Override
+                    public void onProgress(int completed, int total) {
+                        reportProgress("assemble_video", completed, total);
+                    }
+                }, token);
+
+            if (token.isCancelled()) {
+                step.put("message", "Video assembly cancelled");
+                return step;
+            }
+            if (!assembly.optBoolean("success", false)) {
+                step.put("message", assembly.optString("message", "Video assembly failed"));
+                return step;
+            }
 
             step.put("success", true);
+            step.put("assembled", true);
             step.put("output_path", finalVideo.getAbsolutePath());
+            step.put("segments_encoded", assembly.optInt("segments_encoded"));
+            step.put("segments_reused", assembly.optInt("segments_reused"));
             step.put("message", "Video assembled successfully");
 
         } catch (JSONException e) {
@@ -393,6 +704,54 @@ public class OrchestratorAgent {
         return step;
     }
 
+    // One segment per scene image. Dialogue lines are spread over the scenes in script order;
+    // lines whose clip came back as a JSON response still show up as subtitles.
+    private static List<VideoAssembler.Segment> buildSegments(JSONArray images, JSONArray audio) {
+        List<String> framePaths = new ArrayList<>();
+        for (int i = 0; images != null && i < images.length(); i++) {
+            String path = getMediaPath(images.optJSONObject(i));
+            if (path != null) {
+                framePaths.add(path);
+            }
+        }
+
+        List<VideoAssembler.Segment> segments = new ArrayList<>();
+        int clipCount = audio != null ? audio.length() : 0;
+        int clip = 0;
+
+        for (int scene = 0; scene < framePaths.size(); scene++) {
+            List<String> clipPaths = new ArrayList<>();
+            StringBuilder subtitle = new StringBuilder();
+
+            while (clip < clipCount && (long) clip * framePaths.size() / clipCount == scene) {
+                JSONObject clipInfo = audio.optJSONObject(clip++);
+                if (clipInfo == null) {
+                    continue;
+                }
+                String path = getMediaPath(clipInfo);
+                if (path != null) {
+                    clipPaths.add(path);
+                }
+                if (subtitle.length() > 0) {
+                    subtitle.append(" ");
+                }
+                subtitle.append(clipInfo.optString("text", ""));
+            }
+
+            segments.add(new VideoAssembler.Segment(framePaths.get(scene), clipPaths, subtitle.toString().trim()));
+        }
+        return segments;
+    }
+
+    // Images and clips that came back as JSON responses can't be muxed
+    private static String getMediaPath(JSONObject item) {
+        String path = item != null ? item.optString("path", "") : "";
+        if (path.isEmpty() || path.endsWith(".json") || !new File(path).exists()) {
+            return null;
+        }
+        return path;
+    }
+
     private String getDefaultModelEndpoint(String type) {
         // This would normally read from the models configuration
         // For now, we'll return default endpoints
@@ -437,10 +796,11 @@ public class OrchestratorAgent {
         // Simplified scene extraction
         String[] lines = scriptText.split("\n");
         for (String line : lines) {
-            if (line.startsWith("SCENE:") || line.startsWith("Scene:")) {
+            String description = parseSceneLine(line);
+            if (description != null) {
                 try {
                     JSONObject scene = new JSONObject();
-                    scene.put("description", line.substring(6).trim());
+                    scene.put("description", description);
                     scenes.put(scene);
                 } catch (JSONException e) {
                     // Ignore
@@ -451,6 +811,13 @@ public class OrchestratorAgent {
         return scenes;
     }
 
+    private static String parseSceneLine(String line) {
+        if (line.startsWith("SCENE:") || line.startsWith("Scene:")) {
+            return line.substring(6).trim();
+        }
+        return null;
+    }
+
     private JSONArray extractDialogue(String scriptText) {
         JSONArray dialogue = new JSONArray();
 
@@ -465,6 +832,13 @@ public class OrchestratorAgent {
         return dialogue;
     }
 
+    private void reportProgress(String stepId, int completed, int total) {
+        ProgressListener listener = progressListener;
+        if (listener != null) {
+            listener.onStepProgress(stepId, completed, total);
+        }
+    }
+
     private void logResult(JSONObject result) {
         try {
             String projectId = result.getString("project_id");
@@ -474,4 +848,149 @@ public class OrchestratorAgent {
             logger.log("OrchestratorAgent", "Error logging result: " + e.getMessage());
         }
     }
+
+    // Generates scene images as SCENE: lines complete in the streamed script, keeping at
+    // most maxConcurrency requests in flight and the results in scene order
+    private class SceneImagePipeline {
+        private final String modelEndpoint;
+        private final File framesDir;
+        private final int maxConcurrency;
+        private final StringBuilder pendingText = new StringBuilder();
+        private final List<String> descriptions = new ArrayList<>();
+        private final List<JSONObject> results = new ArrayList<>();
+        private final LinkedList<Integer> queued = new LinkedList<>();
+        private final List<Future<?>> futures = new ArrayList<>();
+        private int running = 0;
+        private int completed = 0;
+        private final ProjectCheckpoint checkpoint;
+        private final CancellationToken token;
+        private boolean scriptFinished = false;
+        private boolean cancelled = false;
+
+        SceneImagePipeline(String modelEndpoint, File framesDir, ProjectCheckpoint checkpoint, CancellationToken token) {
+            this.modelEndpoint = modelEndpoint;
+            this.framesDir = framesDir;
+            this.checkpoint = checkpoint;
+            this.maxConcurrency = ModelsConfig.getInstance().getMaxConcurrency(modelEndpoint, DEFAULT_MODEL_CONCURRENCY);
+            // Scene requests get their own child so failing the pipeline aborts them too
+            this.token = token.createChild();
+        }
+
+        synchronized void onScriptText(String text) {
+            pendingText.append(text);
+
+            int newline;
+            while ((newline = pendingText.indexOf("\n")) >= 0) {
+                String line = pendingText.substring(0, newline);
+                pendingText.delete(0, newline + 1);
+                queueSceneLine(line);
+            }
+        }
+
+        synchronized void finishScript() {
+            if (scriptFinished) {
+                return;
+            }
+
+            if (pendingText.length() > 0) {
+                queueSceneLine(pendingText.toString());
+                pendingText.setLength(0);
+            }
+
+            scriptFinished = true;
+            notifyAll();
+        }
+
+        synchronized void discardPartialText() {
+            pendingText.setLength(0);
+        }
+
+        // Queues the scenes of a complete script past those a broken stream already queued
+        synchronized void onFallbackScript(String text) {
+            int seen = 0;
+            for (String line : text.split("\n")) {
+                String description = parseSceneLine(line);
+                if (description == null || description.isEmpty()) {
+                    continue;
+                }
+                if (seen++ >= descriptions.size()) {
+                    queueSceneLine(line);
+                }
+            }
+        }
+
+        void cancel() {
+            synchronized (this) {
+                cancelled = true;
+                queued.clear();
+                for (Future<?> future : futures) {
+                    future.cancel(true);
+                }
+                notifyAll();
+            }
+            // Outside the lock: aborting calls runs callbacks on this thread
+            token.cancel();
+        }
+
+        synchronized List<JSONObject> awaitResults() throws InterruptedException {
+            while (!cancelled && (!scriptFinished || completed < descriptions.size())) {
+                wait();
+            }
+
+            if (cancelled) {
+                throw new InterruptedException("Scene image generation cancelled");
+            }
+
+            return new ArrayList<>(results);
+        }
+
+        private void queueSceneLine(String line) {
+            String description = parseSceneLine(line);
+            if (description == null || description.isEmpty() || cancelled) {
+                return;
+            }
+
+            descriptions.add(description);
+            results.add(null);
+            queued.add(descriptions.size() - 1);
+            startQueued();
+        }
+
+        private void startQueued() {
+            while (!cancelled && running < maxConcurrency && !queued.isEmpty()) {
+                final int index = queued.removeFirst();
+                final String description = descriptions.get(index);
+                running++;
+
+                futures.add(ParallelRunner.getExecutor().submit(new Runnable() {
+                        @Override
+                        public void run() {
+                            JSONObject imageInfo = null;
+                            try {
+                                imageInfo = generateSceneImage(modelEndpoint, framesDir, description, index, checkpoint, token);
+                            } catch (JSONException e) {
+                                logger.log("OrchestratorAgent", "Error generating scene image: " + e.getMessage());
+                            }
+                            onSceneComplete(index, imageInfo);
+                        }
+                    }));
+            }
+        }
+
+        private void onSceneComplete(int index, JSONObject imageInfo) {
+            int done;
+            int total;
+            synchronized (this) {
+                results.set(index, imageInfo);
+                running--;
+                completed++;
+                done = completed;
+                total = descriptions.size();
+                startQueued();
+                notifyAll();
+            }
+
+            reportProgress("generate_images", done, total);
+        }
+    }
 }
@@ -4,6 +4,7 @@ import android.content.Context;
 import android.os.Environment;
 import android.os.StatFs;
 
+import com.ai_autocreate.utils.FFmpegCapabilities;
 import com.ai_autocreate.utils.JSONLogger;
 import com.ai_autocreate.utils.StoragePaths;
 
@@ -231,10 +232,13 @@ public class SanityCheckAgent {
         try {
             result.put("check", "ffmpeg");
 
-            // Check if FFmpeg binary exists
-            File ffmpegBinary = new File("/data/data/com.ai_autocreate/files/ffmpeg");
-            boolean ffmpegExists = ffmpegBinary.exists();
+            // Probed once per binary version and cached, so this doesn't spawn ffmpeg on every run
+            String binaryPath = FFmpegCapabilities.resolveBinaryPath(context);
+            FFmpegCapabilities.Capabilities capabilities = FFmpegCapabilities.getInstance().get(binaryPath);
+            boolean ffmpegExists = new File(binaryPath).exists();
             result.put("ffmpeg_exists", ffmpegExists);
+            result.put("ffmpeg_path", binaryPath);
+            result.put("ffmpeg_version", capabilities.getVersion());
 
             // Check if FFmpegKit is available
             boolean ffmpegKitAvailable = false;
@@ -246,17 +250,11 @@ public class SanityCheckAgent {
             }
             result.put("ffmpeg_kit_available", ffmpegKitAvailable);
 
-            // Check if libass is available
-            boolean libassAvailable = false;
-            try {
-                Class.forName("com.arthenica.ffmpegkit.FFmpegKitConfig");
-                libassAvailable = true;
-            } catch (ClassNotFoundException e) {
-                libassAvailable = false;
-            }
-            result.put("libass_available", libassAvailable);
+            // Subtitle rendering needs libass, which provides the subtitles filter
+            result.put("libass_available", capabilities.isAvailable() && capabilities.hasFilter("subtitles"));
+            result.put("libx264_available", capabilities.isAvailable() && capabilities.hasEncoder("libx264"));
 
-            boolean passed = ffmpegExists || ffmpegKitAvailable;
+            boolean passed = capabilities.isAvailable() || ffmpegKitAvailable;
             result.put("passed", passed);
 
             if (passed) {
@@ -17,6 +17,7 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import com.ai_autocreate.R;
+import com.ai_autocreate.utils.FFmpegCapabilities;
 import com.ai_autocreate.utils.FFmpegRunner;
 import com.ai_autocreate.utils.JSONLogger;
 
@@ -54,6 +55,9 @@ public class FFmpegFragment extends Fragment {
         // Setup listeners
         setupListeners();
 
+        // Show which ffmpeg build commands will run on; probed once per binary version
+        new ProbeFFmpegTask().executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+
         return view;
     }
 
@@ -67,7 +71,8 @@ public class FFmpegFragment extends Fragment {
                         return;
                     }
 
-                    new RunFFmpegTask().execute(command);
+                    // Not the serial AsyncTask queue: FFmpegScheduler limits how many commands run at once
+                    new RunFFmpegTask().executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, command);
                 }
             });
 
@@ -103,14 +108,20 @@ public class FFmpegFragment extends Fragment {
             .show();
     }
 
+    // libx264 unless the probed build is known to lack it
+    private String getVideoEncoder() {
+        FFmpegCapabilities.Capabilities capabilities = ffmpegRunner.peekCapabilities();
+        return capabilities == null || capabilities.hasEncoder("libx264") ? "libx264" : "mpeg4";
+    }
+
     private String getPresetCommand(int presetIndex) {
         switch (presetIndex) {
             case 0: // Video Conversion
-                return "-i input.mp4 -c:v libx264 -c:a aac output.mp4";
+                return "-i input.mp4 -c:v " + getVideoEncoder() + " -c:a aac output.mp4";
             case 1: // Audio Extraction
                 return "-i input.mp4 -vn -acodec copy output.aac";
             case 2: // Image Sequence to Video
-                return "-framerate 24 -i frame_%04d.jpg -c:v libx264 -pix_fmt yuv420p output.mp4";
+                return "-framerate 24 -i frame_%04d.jpg -c:v " + getVideoEncoder() + " -pix_fmt yuv420p output.mp4";
             case 3: // Video to Images
                 return "-i input.mp4 -vf fps=24 frame_%04d.jpg";
             case 4: // Add Subtitles
@@ -136,6 +147,22 @@ public class FFmpegFragment extends Fragment {
         }
     }
 
+    private class ProbeFFmpegTask extends AsyncTask<Void, Void, FFmpegCapabilities.Capabilities> {
+        @Override
+        protected FFmpegCapabilities.Capabilities doInBackground(Void... params) {
+            return ffmpegRunner.getCapabilities();
+        }
+
+        @Override
+        protected void onPostExecute(FFmpegCapabilities.Capabilities capabilities) {
+            if (!isAdded()) {
+                return;
+            }
+            // Not appendOutput: this can finish before the output view has been laid out
+            outputTextView.append((capabilities.isAvailable() ? capabilities.getVersion() : "FFmpeg not available") + "\n");
+        }
+    }
+
     private class RunFFmpegTask extends AsyncTask<String, String, Integer> {
         private String command;
         private String output;
@@ -18,6 +18,7 @@ import android.widget.Toast;
 import com.ai_autocreate.R;
 import com.ai_autocreate.activities.AgentPlaygroundActivity;
 import com.ai_autocreate.agents.SanityCheckAgent;
+import com.ai_autocreate.utils.FFmpegCapabilities;
 import com.ai_autocreate.utils.JSONLogger;
 import com.ai_autocreate.utils.StoragePaths;
 
@@ -109,7 +110,7 @@ public class TestFragment extends Fragment {
 
         // Test 5: FFmpeg Test
         addTestView("FFmpeg Test", "Testing FFmpeg availability...");
-        new FFmpegTestTask().execute();
+        new FFmpegTestTask(FFmpegCapabilities.resolveBinaryPath(getActivity())).execute();
     }
 
     private void addTestView(String testName, String initialMessage) {
@@ -305,25 +306,31 @@ public class TestFragment extends Fragment {
         }
     }
 
-    private class FFmpegTestTask extends AsyncTask<Void, Void, Boolean> {
-        @Override
-        protected Boolean doInBackground(Void... params) {
-            try {
-                // Test FFmpeg availability
-                // This is a simplified version - in a real implementation, 
-                // this would test actual FFmpeg functionality
+    private class FFmpegTestTask extends AsyncTask<Void, Void, FFmpegCapabilities.Capabilities> {
+        private final String binaryPath;
 
-                // For now, we'll just simulate a successful test
-                Thread.sleep(1000);
-                return true;
-            } catch (Exception e) {
-                return false;
-            }
+        FFmpegTestTask(String binaryPath) {
+            this.binaryPath = binaryPath;
         }
 
         @Override
-        protected void onPostExecute(Boolean success) {
-            String message = success ? "FFmpeg test passed" : "FFmpeg test failed";
+        protected FFmpegCapabilities.Capabilities doInBackground(Void... params) {
+            // Cached per binary version, so only the first run after an install or update spawns ffmpeg
+            return FFmpegCapabilities.getInstance().get(binaryPath);
+        }
+
+        @Override
+        protected void onPostExecute(FFmpegCapabilities.Capabilities capabilities) {
+            boolean success = capabilities.isAvailable();
+            String message;
+            if (!success) {
+                message = "FFmpeg test failed: FFmpeg not available";
+            } else if (capabilities.isListed()) {
+                message = "FFmpeg test passed: " + capabilities.getVersion() + " (" + capabilities.getEncoders().size()
+                    + " encoders, " + capabilities.getFilters().size() + " filters)";
+            } else {
+                message = "FFmpeg test passed: " + capabilities.getVersion() + " (components unknown)";
+            }
             updateTestResult("FFmpeg Test", success, message);
         }
     }
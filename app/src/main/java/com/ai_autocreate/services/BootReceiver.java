@@ -6,6 +6,7 @@ import android.content.Intent;
 import android.os.Build;
 
 import com.ai_autocreate.utils.JSONLogger;
+import com.ai_autocreate.utils.JobQueue;
 
 public class BootReceiver extends BroadcastReceiver {
     private static final String TAG = "BootReceiver";
@@ -27,9 +28,14 @@ public class BootReceiver extends BroadcastReceiver {
                 context.startService(schedulerIntent);
             }
 
-            // Start processing service if needed
+            // Pick up queued jobs, including ones a shutdown interrupted, unless the user paused the queue
+            JobQueue jobQueue = JobQueue.getInstance();
+            if (!jobQueue.hasPendingJobs() || jobQueue.isPaused()) {
+                return;
+            }
+
             Intent processingIntent = new Intent(context, ProcessingService.class);
-            // Add any necessary extras for processing
+            processingIntent.setAction("RESUME_QUEUE");
 
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
                 context.startForegroundService(processingIntent);
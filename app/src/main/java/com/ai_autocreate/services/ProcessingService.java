@@ -11,17 +11,22 @@ import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.IBinder;
+import android.os.Looper;
 import android.os.Message;
 import android.os.Messenger;
+import android.os.PowerManager;
 import android.support.v4.app.NotificationCompat;
-import android.widget.Toast;
 
 import com.ai_autocreate.R;
 import com.ai_autocreate.activities.MainActivity;
 import com.ai_autocreate.agents.OrchestratorAgent;
 import com.ai_autocreate.agents.SanityCheckAgent;
+import com.ai_autocreate.utils.CancellationToken;
+import com.ai_autocreate.utils.FileUtils;
 import com.ai_autocreate.utils.JSONLogger;
+import com.ai_autocreate.utils.JobQueue;
 import com.ai_autocreate.utils.NotificationUtils;
+import com.ai_autocreate.utils.ProjectCheckpoint;
 import com.ai_autocreate.utils.StoragePaths;
 
 import org.json.JSONException;
@@ -32,8 +37,10 @@ import java.io.File;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 public class ProcessingService extends Service {
     public static final int MSG_REGISTER_CLIENT = 1;
@@ -51,15 +58,26 @@ public class ProcessingService extends Service {
 
     private static final int NOTIFICATION_ID = 1;
     private static final String CHANNEL_ID = "processing_channel";
+    // Upper bound in case a job never reaches its finally block
+    private static final long WAKE_LOCK_TIMEOUT_MS = 2 * 60 * 60 * 1000; // 2 hours
+    // How long onDestroy waits for cancelled workers to leave their threads
+    private static final long STOP_WAIT_MS = 2000;
 
     private NotificationManager notificationManager;
     private NotificationUtils notificationUtils;
     private JSONLogger logger;
-    private OrchestratorAgent orchestratorAgent;
     private SanityCheckAgent sanityCheckAgent;
-    private boolean isProcessing = false;
-    private String currentProjectId;
+    private JobQueue jobQueue;
+    private int maxWorkers;
+    private PowerManager.WakeLock wakeLock;
     private Messenger messenger;
+    // Jobs running in this process, keyed by project id; guarded by itself
+    private final Map<String, JobWorker> runningJobs = new HashMap<>();
+    // Set first thing in onDestroy; no job may start after it
+    private volatile boolean destroyed = false;
+    // The latest start request; stopping with it fails if a newer one has arrived
+    private int lastStartId;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
 
     // Handler for incoming messages from clients
     private class IncomingHandler extends Handler {
@@ -87,8 +105,15 @@ public class ProcessingService extends Service {
         notificationManager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
         notificationUtils = new NotificationUtils(this);
         logger = new JSONLogger(this);
-        orchestratorAgent = new OrchestratorAgent(this);
         sanityCheckAgent = new SanityCheckAgent(this);
+        jobQueue = JobQueue.getInstance();
+        maxWorkers = JobQueue.getConfiguredWorkers();
+
+        // Jobs still marked running belong to a process that died; their checkpoints let them pick up again
+        int interrupted = jobQueue.requeueInterrupted();
+        if (interrupted > 0) {
+            logger.log("ProcessingService", "Requeued " + interrupted + " interrupted job(s)");
+        }
 
         // Create notification channel
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
@@ -103,26 +128,35 @@ public class ProcessingService extends Service {
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
-        if (intent != null) {
-            String action = intent.getAction();
-
-            if (action != null) {
-                switch (action) {
-                    case "START_PROCESSING":
-                        String projectId = intent.getStringExtra("project_id");
-                        String prompt = intent.getStringExtra("prompt");
-                        startProcessing(projectId, prompt);
-                        break;
-                    case "PAUSE_PROCESSING":
-                        pauseProcessing();
-                        break;
-                    case "CANCEL_PROCESSING":
-                        cancelProcessing();
-                        break;
-                    case "RESUME_PROCESSING":
-                        resumeProcessing();
-                        break;
-                }
+        lastStartId = startId;
+
+        // Restarted after process death: carry on with whatever is queued
+        if (intent == null) {
+            drainQueue();
+            return START_STICKY;
+        }
+
+        String action = intent.getAction();
+        String projectId = intent.getStringExtra("project_id");
+
+        if (action != null) {
+            switch (action) {
+                case "START_PROCESSING":
+                    String prompt = intent.getStringExtra("prompt");
+                    startProcessing(projectId, prompt, intent.getIntExtra("priority", JobQueue.DEFAULT_PRIORITY));
+                    break;
+                case "PAUSE_PROCESSING":
+                    pauseProcessing(projectId);
+                    break;
+                case "CANCEL_PROCESSING":
+                    cancelProcessing(projectId);
+                    break;
+                case "RESUME_PROCESSING":
+                    resumeProcessing(projectId);
+                    break;
+                case "RESUME_QUEUE":
+                    drainQueue();
+                    break;
             }
         }
 
@@ -134,187 +168,483 @@ public class ProcessingService extends Service {
         return mMessenger.getBinder();
     }
 
-    private void startProcessing(String projectId, String prompt) {
-        if (isProcessing) {
-            Toast.makeText(this, R.string.already_processing, Toast.LENGTH_SHORT).show();
+    // Queues the project; it starts right away if a worker is free
+    private void startProcessing(String projectId, String prompt, int priority) {
+        if (projectId == null || prompt == null) {
             return;
         }
 
-        currentProjectId = projectId;
-        isProcessing = true;
+        jobQueue.enqueue(projectId, prompt, priority);
+        updateStatus(projectId, "queued", null);
+        drainQueue();
+    }
 
-        // Start foreground service with notification
-        startForeground(NOTIFICATION_ID, createNotification(getString(R.string.processing_started), 0));
+    // Starts queued jobs until every worker is busy
+    private void drainQueue() {
+        if (destroyed) {
+            return;
+        }
 
-        // Start processing in background thread
-        new Thread(new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        // Create project directory if it doesn't exist
-                        File projectDir = new File(StoragePaths.getProjectsDir() + "/" + currentProjectId);
-                        if (!projectDir.exists()) {
-                            projectDir.mkdirs();
-                        }
+        synchronized (runningJobs) {
+            while (runningJobs.size() < maxWorkers) {
+                JSONObject job = jobQueue.takeNext();
+                if (job == null) {
+                    break;
+                }
+                startJob(job);
+            }
+        }
+        stopIfIdle();
+    }
+
+    private void startJob(JSONObject job) {
+        if (destroyed) {
+            return;
+        }
+
+        String projectId = job.optString("project_id");
+        // Checkpoints from an earlier run mean this is a resume, not a fresh project
+        boolean resuming = new ProjectCheckpoint(projectId).loadJob() != null;
 
-                        // Create subdirectories
-                        new File(projectDir, "frames").mkdirs();
-                        new File(projectDir, "audio").mkdirs();
-                        new File(projectDir, "checkpoints").mkdirs();
+        JobWorker worker = new JobWorker(projectId, job.optString("prompt"), resuming);
+        runningJobs.put(projectId, worker);
 
-                        // Step 1: Run sanity check
-                        updateProgress(10, getString(R.string.running_sanity_check));
-                        JSONObject sanityResult = sanityCheckAgent.runCheck();
+        // Each job start extends the wake lock, so long batches stay covered
+        acquireWakeLock();
+        startForeground(NOTIFICATION_ID, createNotification(getString(R.string.processing_started), 0));
 
-                        if (!sanityResult.optBoolean("passed", false)) {
-                            updateStatus("error", sanityResult.optString("message", "Sanity check failed"));
+        worker.thread = new Thread(worker, "job-" + projectId);
+        worker.thread.start();
+    }
+
+    // Runs one project; cancelling its token aborts network calls and FFmpeg processes of this job only
+    private class JobWorker implements Runnable {
+        final String projectId;
+        final String prompt;
+        final boolean resuming;
+        final CancellationToken token = new CancellationToken();
+        final OrchestratorAgent orchestratorAgent;
+        final Map<String, int[]> stepProgress = new HashMap<>();
+        Thread thread;
+
+        JobWorker(String projectId, String prompt, boolean resuming) {
+            this.projectId = projectId;
+            this.prompt = prompt;
+            this.resuming = resuming;
+
+            // One orchestrator per job so progress reports can't cross projects
+            this.orchestratorAgent = new OrchestratorAgent(ProcessingService.this);
+            this.orchestratorAgent.setProgressListener(new OrchestratorAgent.ProgressListener() {
+                    @Override
+                    public void onStepProgress(String stepId, int completed, int total) {
+                        if (total <= 0) {
                             return;
                         }
 
-                        // Step 2: Create project configuration
-                        updateProgress(20, getString(R.string.creating_project_config));
-                        JSONObject projectConfig = new JSONObject();
-                        projectConfig.put("project_id", currentProjectId);
-                        projectConfig.put("title", prompt.substring(0, Math.min(prompt.length(), 50)));
-                        projectConfig.put("prompt", prompt);
-                        projectConfig.put("workflowType", "auto_generate");
-                        projectConfig.put("created_at", new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.getDefault()).format(new Date()));
-
-                        // Save project config
-                        File configFile = new File(StoragePaths.getProjectsDir() + "/" + currentProjectId + "/project.json");
-                        JSONLogger.writeToFile(configFile, projectConfig.toString());
-
-                        // Step 3: Run orchestrator agent
-                        updateProgress(30, getString(R.string.running_orchestrator));
-                        JSONObject orchestratorInput = new JSONObject();
-                        orchestratorInput.put("project_id", currentProjectId);
-                        orchestratorInput.put("prompt", prompt);
-                        orchestratorInput.put("project_config", projectConfig);
-
-                        JSONObject orchestratorResult = orchestratorAgent.process(orchestratorInput);
-
-                        if (orchestratorResult == null || !orchestratorResult.optBoolean("success", false)) {
-                            String errorMessage = orchestratorResult != null ? 
-                                orchestratorResult.optString("message", "Orchestrator failed") : 
-                                "Orchestrator returned null";
-                            updateStatus("error", errorMessage);
+                        // Assembly reports encoded scene segments; it fills the 60-90% band
+                        if ("assemble_video".equals(stepId)) {
+                            int percent = (int) (100L * completed / total);
+                            updateProgress(JobWorker.this.projectId, 60 + (30 * completed / total),
+                                           getString(R.string.assembling_video) + " (" + percent + "%)");
                             return;
                         }
 
-                        // Step 4: Generate content based on orchestrator result
-                        updateProgress(60, getString(R.string.generating_content));
-
-                        // Simulate content generation with progress updates
-                        for (int i = 0; i < 5; i++) {
-                            Thread.sleep(1000); // Simulate work
-                            updateProgress(60 + (i * 6), getString(R.string.generating_content) + " (" + (i + 1) + "/5)");
+                        synchronized (stepProgress) {
+                            stepProgress.put(stepId, new int[] {completed, total});
                         }
 
-                        // Create placeholder files to indicate successful generation
-                        File scriptFile = new File(projectDir, "script.txt");
-                        JSONLogger.writeToFile(scriptFile, "Generated script content based on: " + prompt);
+                        // Images and audio run concurrently, so combine them into one 30-60% band
+                        updateProgress(JobWorker.this.projectId, 30 + (int) (30 * getCombinedStepFraction()),
+                                       getStepProgressMessage(stepId, completed, total));
+                    }
+                });
+        }
 
-                        // Step 5: Finalize project
-                        updateProgress(90, getString(R.string.finalizing_project));
+        @Override
+        public void run() {
+            final ProjectCheckpoint checkpoint = new ProjectCheckpoint(projectId);
+            saveJobCheckpoint(checkpoint, projectId, prompt);
+
+            try {
+                // Create project directory if it doesn't exist
+                File projectDir = new File(StoragePaths.getProjectsDir() + "/" + projectId);
+                if (!projectDir.exists()) {
+                    projectDir.mkdirs();
+                }
+
+                // Create subdirectories
+                new File(projectDir, "frames").mkdirs();
+                new File(projectDir, "audio").mkdirs();
+                new File(projectDir, "checkpoints").mkdirs();
+
+                // Step 1: Run sanity check
+                updateProgress(projectId, 10, getString(R.string.running_sanity_check));
+                JSONObject sanityResult = sanityCheckAgent.runCheck();
+
+                if (!sanityResult.optBoolean("passed", false)) {
+                    finishJob(this, JobQueue.STATUS_FAILED, sanityResult.optString("message", "Sanity check failed"));
+                    return;
+                }
+
+                // Step 2: Create project configuration, keeping the existing one when resuming
+                updateProgress(projectId, 20, getString(R.string.creating_project_config));
+                File configFile = new File(StoragePaths.getProjectsDir() + "/" + projectId + "/project.json");
+                JSONObject projectConfig = resuming ? loadProjectConfig(configFile) : null;
+                if (projectConfig == null) {
+                    projectConfig = new JSONObject();
+                    projectConfig.put("project_id", projectId);
+                    projectConfig.put("title", prompt.substring(0, Math.min(prompt.length(), 50)));
+                    projectConfig.put("prompt", prompt);
+                    projectConfig.put("workflowType", "auto_generate");
+                    projectConfig.put("created_at", new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.getDefault()).format(new Date()));
+                } else {
+                    projectConfig.put("resumed_at", new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.getDefault()).format(new Date()));
+                }
 
-                        // Update project config with results
-                        projectConfig.put("status", "completed");
-                        projectConfig.put("completed_at", new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.getDefault()).format(new Date()));
+                // Save project config
+                JSONLogger.writeToFile(configFile, projectConfig.toString());
 
-                        JSONLogger.writeToFile(configFile, projectConfig.toString());
+                // Step 3: Run orchestrator agent
+                updateProgress(projectId, 30, getString(R.string.running_orchestrator));
+                JSONObject orchestratorInput = new JSONObject();
+                orchestratorInput.put("project_id", projectId);
+                orchestratorInput.put("prompt", prompt);
+                orchestratorInput.put("project_config", projectConfig);
 
-                        updateProgress(100, getString(R.string.processing_completed));
-                        updateStatus("completed", getString(R.string.processing_completed_successfully));
+                JSONObject orchestratorResult = orchestratorAgent.process(orchestratorInput, token);
 
-                    } catch (Exception e) {
-                        logger.log("ProcessingService", "Error in processing: " + e.getMessage());
-                        updateStatus("error", "Error in processing: " + e.getMessage());
-                    } finally {
-                        isProcessing = false;
-                        stopForeground(true);
-                        stopSelf();
+                // Pause or cancel has already recorded and reported the outcome
+                if (token.isCancelled()) {
+                    return;
+                }
+
+                if (orchestratorResult == null || !orchestratorResult.optBoolean("success", false)) {
+                    String errorMessage = orchestratorResult != null ?
+                        orchestratorResult.optString("message", "Orchestrator failed") :
+                        "Orchestrator returned null";
+                    finishJob(this, JobQueue.STATUS_FAILED, errorMessage);
+                    return;
+                }
+
+                // Create placeholder files to indicate successful generation
+                File scriptFile = new File(projectDir, "script.txt");
+                JSONLogger.writeToFile(scriptFile, "Generated script content based on: " + prompt);
+
+                // Step 4: Finalize project
+                updateProgress(projectId, 90, getString(R.string.finalizing_project));
+
+                // Update project config with results
+                projectConfig.put("status", "completed");
+                projectConfig.put("completed_at", new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.getDefault()).format(new Date()));
+
+                JSONLogger.writeToFile(configFile, projectConfig.toString());
+                checkpoint.setJobStatus(ProjectCheckpoint.STATUS_COMPLETED);
+
+                updateProgress(projectId, 100, getString(R.string.processing_completed));
+                finishJob(this, JobQueue.STATUS_COMPLETED, getString(R.string.processing_completed_successfully));
+
+            } catch (Exception e) {
+                if (!token.isCancelled()) {
+                    logger.log("ProcessingService", "Error in processing: " + e.getMessage());
+                    finishJob(this, JobQueue.STATUS_FAILED, "Error in processing: " + e.getMessage());
+                }
+            } finally {
+                onJobStopped(this);
+            }
+        }
+
+        private double getCombinedStepFraction() {
+            synchronized (stepProgress) {
+                double fraction = 0;
+                for (String stepId : new String[] {"generate_images", "generate_audio"}) {
+                    int[] progress = stepProgress.get(stepId);
+                    if (progress != null && progress[1] > 0) {
+                        fraction += 0.5 * progress[0] / progress[1];
                     }
                 }
-            }).start();
+                return fraction;
+            }
+        }
     }
 
-    private void pauseProcessing() {
-        // Save checkpoint
-        saveCheckpoint();
+    private void finishJob(JobWorker worker, String status, String message) {
+        jobQueue.setStatus(worker.projectId, status, message);
+        updateStatus(worker.projectId, JobQueue.STATUS_COMPLETED.equals(status) ? "completed" : "error", message);
+    }
 
-        // Update notification
-        Notification notification = createNotification(getString(R.string.processing_paused), 0);
-        notificationManager.notify(NOTIFICATION_ID, notification);
+    // A worker's thread is done; free its slot for the next queued job
+    private void onJobStopped(JobWorker worker) {
+        synchronized (runningJobs) {
+            // Pause and cancel have already taken the worker out
+            if (runningJobs.get(worker.projectId) == worker) {
+                runningJobs.remove(worker.projectId);
+            }
+        }
+        drainQueue();
+    }
 
-        // Send broadcast
-        Intent intent = new Intent(ACTION_PROCESSING_UPDATE);
-        intent.putExtra(EXTRA_TYPE, "status");
-        intent.putExtra(EXTRA_STATUS, "paused");
-        intent.putExtra(EXTRA_PROJECT_ID, currentProjectId);
-        sendBroadcast(intent);
+    // Takes a running job out of its worker slot and aborts it; returns false if it wasn't running
+    private boolean stopRunningJob(String projectId) {
+        JobWorker worker;
+        synchronized (runningJobs) {
+            worker = runningJobs.remove(projectId);
+        }
+        if (worker == null) {
+            return false;
+        }
+
+        // Abort in-flight requests, retry sleeps and FFmpeg right away instead of letting them run out
+        worker.token.cancel();
+        return true;
     }
 
-    private void cancelProcessing() {
-        isProcessing = false;
+    private List<String> getRunningProjectIds() {
+        synchronized (runningJobs) {
+            return new ArrayList<>(runningJobs.keySet());
+        }
+    }
 
-        // Update notification
-        Notification notification = createNotification(getString(R.string.processing_cancelled), 0);
-        notificationManager.notify(NOTIFICATION_ID, notification);
+    // Without a project id the whole queue pauses: running jobs go back to the queue and
+    // nothing new starts until it is resumed. Finished steps, images and clips are
+    // checkpointed, so paused jobs continue where they stopped.
+    private void pauseProcessing(String projectId) {
+        List<String> paused = new ArrayList<>();
+
+        if (projectId == null) {
+            jobQueue.setPaused(true);
+            for (String runningId : getRunningProjectIds()) {
+                if (stopRunningJob(runningId)) {
+                    jobQueue.setStatus(runningId, JobQueue.STATUS_QUEUED, null);
+                    paused.add(runningId);
+                }
+            }
+        } else {
+            String status = jobQueue.getStatus(projectId);
+            if (stopRunningJob(projectId) || JobQueue.STATUS_QUEUED.equals(status)) {
+                jobQueue.setStatus(projectId, JobQueue.STATUS_PAUSED, null);
+                paused.add(projectId);
+            }
+        }
 
-        // Send broadcast
-        Intent intent = new Intent(ACTION_PROCESSING_UPDATE);
-        intent.putExtra(EXTRA_TYPE, "status");
-        intent.putExtra(EXTRA_STATUS, "cancelled");
-        intent.putExtra(EXTRA_PROJECT_ID, currentProjectId);
-        sendBroadcast(intent);
+        for (String pausedId : paused) {
+            saveCheckpoint(pausedId, ProjectCheckpoint.STATUS_PAUSED);
+            updateStatus(pausedId, "paused", getString(R.string.processing_paused));
+        }
 
-        // Stop service
-        stopForeground(true);
-        stopSelf();
+        drainQueue();
     }
 
-    private void resumeProcessing() {
-        // Load checkpoint and resume processing
-        // This is a simplified version - in the real implementation, 
-        // this would load the checkpoint and resume from where it left off
+    // Without a project id every running, queued and paused job is cancelled
+    private void cancelProcessing(String projectId) {
+        List<String> cancelled = new ArrayList<>();
 
-        // Update notification
-        Notification notification = createNotification(getString(R.string.processing_resumed), 0);
-        notificationManager.notify(NOTIFICATION_ID, notification);
+        if (projectId == null) {
+            cancelled.addAll(getRunningProjectIds());
+            cancelled.addAll(jobQueue.getProjectIds(JobQueue.STATUS_QUEUED));
+            cancelled.addAll(jobQueue.getProjectIds(JobQueue.STATUS_PAUSED));
+        } else {
+            cancelled.add(projectId);
+        }
 
-        // Send broadcast
-        Intent intent = new Intent(ACTION_PROCESSING_UPDATE);
-        intent.putExtra(EXTRA_TYPE, "status");
-        intent.putExtra(EXTRA_STATUS, "resumed");
-        intent.putExtra(EXTRA_PROJECT_ID, currentProjectId);
-        sendBroadcast(intent);
+        for (String cancelledId : cancelled) {
+            stopRunningJob(cancelledId);
+            jobQueue.setStatus(cancelledId, JobQueue.STATUS_CANCELLED, null);
+
+            // Finished work stays checkpointed, but the job is no longer resumable by default
+            saveCheckpoint(cancelledId, ProjectCheckpoint.STATUS_CANCELLED);
+            updateStatus(cancelledId, "cancelled", getString(R.string.processing_cancelled));
+        }
+
+        drainQueue();
     }
 
-    private void saveCheckpoint() {
-        try {
-            JSONObject checkpoint = new JSONObject();
-            checkpoint.put("project_id", currentProjectId);
-            checkpoint.put("timestamp", System.currentTimeMillis());
-            checkpoint.put("status", "paused");
+    // Without a project id the queue and every paused job resume. A single project can be
+    // resumed after a pause, a cancel or a crash: the step checkpoints let the orchestrator
+    // skip everything that already finished.
+    private void resumeProcessing(String projectId) {
+        List<String> resumed = new ArrayList<>();
+
+        if (projectId == null) {
+            jobQueue.setPaused(false);
+            for (String pausedId : jobQueue.getProjectIds(JobQueue.STATUS_PAUSED)) {
+                jobQueue.setStatus(pausedId, JobQueue.STATUS_QUEUED, null);
+                resumed.add(pausedId);
+            }
+        } else {
+            JSONObject job = jobQueue.getJob(projectId);
+            String prompt = job != null ? job.optString("prompt", "") : "";
+            int priority = job != null ? job.optInt("priority", JobQueue.DEFAULT_PRIORITY) : JobQueue.DEFAULT_PRIORITY;
+
+            // Projects from before the queue existed only have their job checkpoint
+            if (prompt.isEmpty()) {
+                JSONObject checkpointJob = new ProjectCheckpoint(projectId).loadJob();
+                prompt = checkpointJob != null ? checkpointJob.optString("prompt", "") : "";
+            }
+
+            if (prompt.isEmpty()) {
+                logger.log("ProcessingService", "Nothing to resume for project: " + projectId);
+            } else {
+                jobQueue.enqueue(projectId, prompt, priority);
+                resumed.add(projectId);
+            }
+        }
+
+        for (String resumedId : resumed) {
+            updateStatus(resumedId, "resumed", getString(R.string.processing_resumed));
+        }
+
+        drainQueue();
+    }
+
+    // Stops the service once no job is running and none can start. Workers call this too; the
+    // check and the stop run on the main thread, where onStartCommand can't start a job in between.
+    private void stopIfIdle() {
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+            mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        stopIfIdle();
+                    }
+                });
+            return;
+        }
+        if (destroyed) {
+            return;
+        }
+
+        synchronized (runningJobs) {
+            if (!runningJobs.isEmpty()) {
+                updateNotification(null, 0);
+                return;
+            }
+        }
+
+        releaseWakeLock();
+
+        // Leave a paused notification with a resume action behind
+        boolean hasPaused = jobQueue.isPaused() || jobQueue.countByStatus(JobQueue.STATUS_PAUSED) > 0;
+        stopForeground(!hasPaused);
+        if (hasPaused) {
+            List<String> pausedIds = jobQueue.getProjectIds(JobQueue.STATUS_PAUSED);
+            String pausedId = !jobQueue.isPaused() && pausedIds.size() == 1 ? pausedIds.get(0) : null;
+            notificationManager.notify(NOTIFICATION_ID, createPausedNotification(pausedId));
+        }
+        stopSelfResult(lastStartId);
+    }
+
+    private synchronized void acquireWakeLock() {
+        if (wakeLock == null) {
+            PowerManager powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
+            wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "AIAutoCreate:processing");
+            wakeLock.setReferenceCounted(false);
+        }
+        wakeLock.acquire(WAKE_LOCK_TIMEOUT_MS);
+    }
+
+    private synchronized void releaseWakeLock() {
+        if (wakeLock != null && wakeLock.isHeld()) {
+            wakeLock.release();
+        }
+    }
+
+    @Override
+    public void onDestroy() {
+        // Stopping workers below must not pull the next jobs off the queue
+        destroyed = true;
+
+        // Jobs stay "running" in the queue and are picked up again when the service restarts
+        List<JobWorker> workers;
+        synchronized (runningJobs) {
+            workers = new ArrayList<>(runningJobs.values());
+        }
+        for (JobWorker worker : workers) {
+            stopRunningJob(worker.projectId);
+        }
 
-            File checkpointFile = new File(StoragePaths.getProjectsDir() + "/" + currentProjectId + "/checkpoints/checkpoint.json");
-            JSONLogger.writeToFile(checkpointFile, checkpoint.toString());
+        // Cancelled workers abort their requests and FFmpeg processes; give them a moment to exit
+        long deadline = System.currentTimeMillis() + STOP_WAIT_MS;
+        for (JobWorker worker : workers) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (worker.thread == null || remaining <= 0) {
+                continue;
+            }
+            try {
+                worker.thread.join(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        releaseWakeLock();
+        super.onDestroy();
+    }
+
+    private void saveCheckpoint(String projectId, String status) {
+        new ProjectCheckpoint(projectId).setJobStatus(status);
+    }
+
+    private void saveJobCheckpoint(ProjectCheckpoint checkpoint, String projectId, String prompt) {
+        try {
+            JSONObject job = new JSONObject();
+            job.put("project_id", projectId);
+            job.put("prompt", prompt);
+            job.put("status", ProjectCheckpoint.STATUS_RUNNING);
+            job.put("updated_at", System.currentTimeMillis());
+            checkpoint.saveJob(job);
         } catch (JSONException e) {
             logger.log("ProcessingService", "Error saving checkpoint: " + e.getMessage());
         }
     }
 
-    private void updateProgress(int percent, String message) {
+    private JSONObject loadProjectConfig(File configFile) {
+        if (!configFile.exists()) {
+            return null;
+        }
+
+        try {
+            return new JSONObject(FileUtils.readFromFile(configFile));
+        } catch (JSONException e) {
+            return null;
+        }
+    }
+
+    private String getStepProgressMessage(String stepId, int completed, int total) {
+        String label;
+        if ("generate_images".equals(stepId)) {
+            label = getString(R.string.generating_images);
+        } else if ("generate_audio".equals(stepId)) {
+            label = getString(R.string.generating_audio);
+        } else {
+            label = getString(R.string.generating_content);
+        }
+        return label + " (" + completed + "/" + total + ")";
+    }
+
+    // With one job the notification shows its progress; with several, how many run and wait
+    private void updateNotification(String message, int percent) {
+        int running;
+        synchronized (runningJobs) {
+            running = runningJobs.size();
+        }
+
+        if (running > 1 || message == null) {
+            message = getString(R.string.processing_jobs_summary, running, jobQueue.countByStatus(JobQueue.STATUS_QUEUED));
+            percent = 0;
+        }
+        notificationManager.notify(NOTIFICATION_ID, createNotification(message, percent));
+    }
+
+    private void updateProgress(String projectId, int percent, String message) {
         // Update notification
-        Notification notification = createNotification(message, percent);
-        notificationManager.notify(NOTIFICATION_ID, notification);
+        updateNotification(message, percent);
 
         // Send broadcast
         Intent intent = new Intent(ACTION_PROCESSING_UPDATE);
         intent.putExtra(EXTRA_TYPE, "progress");
         intent.putExtra(EXTRA_PERCENT, percent);
         intent.putExtra(EXTRA_MESSAGE, message);
-        intent.putExtra(EXTRA_PROJECT_ID, currentProjectId);
+        intent.putExtra(EXTRA_PROJECT_ID, projectId);
         sendBroadcast(intent);
 
         // Send message to registered client
@@ -324,7 +654,7 @@ public class ProcessingService extends Service {
                 Bundle bundle = new Bundle();
                 bundle.putInt(EXTRA_PERCENT, percent);
                 bundle.putString(EXTRA_MESSAGE, message);
-                bundle.putString(EXTRA_PROJECT_ID, currentProjectId);
+                bundle.putString(EXTRA_PROJECT_ID, projectId);
                 msg.setData(bundle);
                 messenger.send(msg);
             } catch (Exception e) {
@@ -334,13 +664,13 @@ public class ProcessingService extends Service {
         }
     }
 
-    private void updateStatus(String status, String message) {
+    private void updateStatus(String projectId, String status, String message) {
         // Send broadcast
         Intent intent = new Intent(ACTION_PROCESSING_UPDATE);
         intent.putExtra(EXTRA_TYPE, "status");
         intent.putExtra(EXTRA_STATUS, status);
         intent.putExtra(EXTRA_MESSAGE, message);
-        intent.putExtra(EXTRA_PROJECT_ID, currentProjectId);
+        intent.putExtra(EXTRA_PROJECT_ID, projectId);
         sendBroadcast(intent);
 
         // Send message to registered client
@@ -350,7 +680,7 @@ public class ProcessingService extends Service {
                 Bundle bundle = new Bundle();
                 bundle.putString(EXTRA_STATUS, status);
                 bundle.putString(EXTRA_MESSAGE, message);
-                bundle.putString(EXTRA_PROJECT_ID, currentProjectId);
+                bundle.putString(EXTRA_PROJECT_ID, projectId);
                 msg.setData(bundle);
                 messenger.send(msg);
             } catch (Exception e) {
@@ -360,6 +690,33 @@ public class ProcessingService extends Service {
         }
     }
 
+    private Notification createPausedNotification(String projectId) {
+        Intent notificationIntent = new Intent(this, MainActivity.class);
+        PendingIntent pendingIntent = PendingIntent.getActivity(this, 0, notificationIntent, 0);
+
+        // The service is stopped while paused, so the intents carry the project; without one
+        // they act on the whole queue
+        Intent resumeIntent = new Intent(this, ProcessingService.class);
+        resumeIntent.setAction("RESUME_PROCESSING");
+        resumeIntent.putExtra("project_id", projectId);
+        PendingIntent resumePendingIntent = PendingIntent.getService(this, 1, resumeIntent, PendingIntent.FLAG_UPDATE_CURRENT);
+
+        Intent cancelIntent = new Intent(this, ProcessingService.class);
+        cancelIntent.setAction("CANCEL_PROCESSING");
+        cancelIntent.putExtra("project_id", projectId);
+        PendingIntent cancelPendingIntent = PendingIntent.getService(this, 1, cancelIntent, PendingIntent.FLAG_UPDATE_CURRENT);
+
+        return new NotificationCompat.Builder(this, CHANNEL_ID)
+            .setSmallIcon(R.drawable.ic_notification)
+            .setContentTitle(getString(R.string.app_name))
+            .setContentText(getString(R.string.processing_paused))
+            .setContentIntent(pendingIntent)
+            .setOngoing(false)
+            .addAction(R.drawable.ic_refresh, getString(R.string.resume), resumePendingIntent)
+            .addAction(R.drawable.ic_cancel, getString(R.string.cancel), cancelPendingIntent)
+            .build();
+    }
+
     private Notification createNotification(String message, int progress) {
         Intent notificationIntent = new Intent(this, MainActivity.class);
         PendingIntent pendingIntent = PendingIntent.getActivity(this, 0, notificationIntent, 0);
@@ -0,0 +1,298 @@
+package com.ai_autocreate.utils;
+
+import android.content.Context;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Spreads calls across the keys saved in APIKeysActivity. Keys are grouped by provider,
+// taken from an explicit "provider" field or inferred from the key prefix, and each call
+// gets the least-loaded key of the endpoint's provider, round-robin among equals. Keys
+// whose provider can't be told serve any provider that has no valid keys of its own.
+// A key answering 429 cools down for the hinted time; one answering 401/403 is marked
+// invalid and skipped until the saved keys are edited. Entries with "enabled": false are
+// left out.
+public class ApiKeyPool {
+    public static final String PROVIDER_HUGGINGFACE = "huggingface";
+    public static final String PROVIDER_GOOGLE = "google";
+    public static final String PROVIDER_OPENAI = "openai";
+    public static final String PROVIDER_UNKNOWN = "unknown";
+
+    private static final long DEFAULT_RATE_LIMIT_COOLDOWN_MS = 60 * 1000; // 1 minute
+
+    private static ApiKeyPool instance;
+
+    private PrefsObfuscator prefs;
+    private JSONLogger logger;
+    private String loadedKeysJson = null;
+    private List<PooledKey> keys = new ArrayList<>();
+    private int roundRobin = 0;
+
+    private ApiKeyPool(Context context) {
+        this.prefs = new PrefsObfuscator(context);
+        this.logger = new JSONLogger(context);
+    }
+
+    public static synchronized ApiKeyPool getInstance(Context context) {
+        if (instance == null) {
+            instance = new ApiKeyPool(context.getApplicationContext() != null ? context.getApplicationContext() : context);
+        }
+        return instance;
+    }
+
+    // Returns null when no key for the endpoint's provider is currently usable
+    public synchronized Lease acquire(String endpoint) {
+        reloadIfChanged();
+
+        String provider = resolveProvider(endpoint);
+        long now = System.currentTimeMillis();
+        PooledKey best = null;
+        int size = keys.size();
+
+        for (int i = 0; i < size; i++) {
+            PooledKey key = keys.get((roundRobin + i) % size);
+            if (!key.provider.equals(provider) || key.invalid || key.coolingUntil > now) {
+                continue;
+            }
+            if (best == null || key.inFlight < best.inFlight) {
+                best = key;
+            }
+        }
+
+        if (best == null) {
+            return null;
+        }
+
+        roundRobin = (keys.indexOf(best) + 1) % size;
+        best.inFlight++;
+        best.requests++;
+        return new Lease(best);
+    }
+
+    // Like acquire, but waits for the first cooldown to end when every key is cooling down.
+    // Returns null if that is past the deadline, on cancel, or when no key can serve at all.
+    public Lease acquire(String endpoint, long deadline, CancellationToken token) throws InterruptedException {
+        while (true) {
+            long availableAt;
+            synchronized (this) {
+                Lease lease = acquire(endpoint);
+                if (lease != null) {
+                    return lease;
+                }
+                availableAt = getEarliestCooldownEnd(resolveProvider(endpoint));
+            }
+
+            if (availableAt == 0 || availableAt > deadline) {
+                return null;
+            }
+            if (!token.sleep(availableAt - System.currentTimeMillis())) {
+                return null;
+            }
+        }
+    }
+
+    // True when saved keys could serve the endpoint, even if none is usable right now
+    public synchronized boolean hasKeysFor(String endpoint) {
+        reloadIfChanged();
+
+        String provider = getProviderForEndpoint(endpoint);
+        for (PooledKey key : keys) {
+            if (key.provider.equals(provider) || key.provider.equals(PROVIDER_UNKNOWN)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public synchronized JSONObject getStats() {
+        reloadIfChanged();
+
+        JSONObject stats = new JSONObject();
+        JSONArray list = new JSONArray();
+        long now = System.currentTimeMillis();
+
+        try {
+            for (PooledKey key : keys) {
+                JSONObject entry = new JSONObject();
+                entry.put("name", key.name);
+                entry.put("provider", key.provider);
+                entry.put("in_flight", key.inFlight);
+                entry.put("requests", key.requests);
+                entry.put("errors", key.errors);
+                entry.put("rate_limited", key.rateLimited);
+                entry.put("cooling_down", key.coolingUntil > now);
+                entry.put("invalid", key.invalid);
+                list.put(entry);
+            }
+            stats.put("keys", list);
+        } catch (JSONException e) {
+            // Ignore
+        }
+
+        return stats;
+    }
+
+    // Keys whose provider can't be told stand in for a provider without valid keys of its own
+    private String resolveProvider(String endpoint) {
+        String provider = getProviderForEndpoint(endpoint);
+        return hasValidKeys(provider) ? provider : PROVIDER_UNKNOWN;
+    }
+
+    // 0 when no valid key of the provider is cooling down
+    private long getEarliestCooldownEnd(String provider) {
+        long earliest = 0;
+        for (PooledKey key : keys) {
+            if (key.provider.equals(provider) && !key.invalid
+                && (earliest == 0 || key.coolingUntil < earliest)) {
+                earliest = key.coolingUntil;
+            }
+        }
+        return earliest;
+    }
+
+    private boolean hasValidKeys(String provider) {
+        for (PooledKey key : keys) {
+            if (key.provider.equals(provider) && !key.invalid) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static String getProviderForEndpoint(String endpoint) {
+        String lower = endpoint != null ? endpoint.toLowerCase() : "";
+        if (lower.contains("huggingface.co") || lower.contains("hf.space")) {
+            return PROVIDER_HUGGINGFACE;
+        }
+        if (lower.contains("googleapis.com")) {
+            return PROVIDER_GOOGLE;
+        }
+        if (lower.contains("openai.com")) {
+            return PROVIDER_OPENAI;
+        }
+        return PROVIDER_UNKNOWN;
+    }
+
+    public static String getProviderForKey(JSONObject apiKey) {
+        String provider = apiKey.optString("provider", "").trim().toLowerCase();
+        if (!provider.isEmpty()) {
+            return provider;
+        }
+
+        String key = apiKey.optString("key", "");
+        if (key.startsWith("hf_")) {
+            return PROVIDER_HUGGINGFACE;
+        }
+        if (key.startsWith("AIza")) {
+            return PROVIDER_GOOGLE;
+        }
+        if (key.startsWith("sk-")) {
+            return PROVIDER_OPENAI;
+        }
+        return PROVIDER_UNKNOWN;
+    }
+
+    private synchronized void release(PooledKey key, int statusCode, long retryAfterMs) {
+        key.inFlight--;
+
+        if (statusCode == 429) {
+            key.rateLimited++;
+            long cooldown = retryAfterMs >= 0 ? retryAfterMs : DEFAULT_RATE_LIMIT_COOLDOWN_MS;
+            key.coolingUntil = Math.max(key.coolingUntil, System.currentTimeMillis() + cooldown);
+            logger.log("ApiKeyPool", "Key " + key.name + " rate limited, cooling down for " + cooldown + "ms");
+        } else if (statusCode == 401 || statusCode == 403) {
+            key.errors++;
+            key.invalid = true;
+            logger.log("ApiKeyPool", "Key " + key.name + " was rejected (HTTP " + statusCode + "), marking it invalid");
+        } else if (statusCode == 0 || statusCode >= 500) {
+            key.errors++;
+        }
+    }
+
+    private void reloadIfChanged() {
+        String keysJson = prefs.getString("api_keys", "[]");
+        if (keysJson.equals(loadedKeysJson)) {
+            return;
+        }
+
+        // Keep load and cooldowns for keys that survive the edit
+        List<PooledKey> reloaded = new ArrayList<>();
+        try {
+            JSONArray jsonArray = new JSONArray(keysJson);
+            for (int i = 0; i < jsonArray.length(); i++) {
+                JSONObject apiKey = jsonArray.optJSONObject(i);
+                if (apiKey == null || apiKey.optString("key", "").trim().isEmpty() || !apiKey.optBoolean("enabled", true)) {
+                    continue;
+                }
+
+                String value = apiKey.optString("key", "").trim();
+                PooledKey key = null;
+                for (PooledKey existing : keys) {
+                    if (existing.value.equals(value)) {
+                        key = existing;
+                        break;
+                    }
+                }
+
+                if (key == null) {
+                    key = new PooledKey(value);
+                }
+                key.name = apiKey.optString("name", "key " + (i + 1));
+                key.provider = getProviderForKey(apiKey);
+                // The keys were edited, so a rejected key may have been fixed; give it another try
+                key.invalid = false;
+                reloaded.add(key);
+            }
+        } catch (JSONException e) {
+            logger.log("ApiKeyPool", "Error loading API keys: " + e.getMessage());
+        }
+
+        keys = reloaded;
+        loadedKeysJson = keysJson;
+        roundRobin = 0;
+    }
+
+    public class Lease {
+        private final PooledKey key;
+        private boolean released = false;
+
+        private Lease(PooledKey key) {
+            this.key = key;
+        }
+
+        public String getKey() {
+            return key.value;
+        }
+
+        // statusCode 0 for a network failure
+        public void release(int statusCode, long retryAfterMs) {
+            synchronized (ApiKeyPool.this) {
+                if (released) {
+                    return;
+                }
+                released = true;
+                ApiKeyPool.this.release(key, statusCode, retryAfterMs);
+            }
+        }
+    }
+
+    private static class PooledKey {
+        final String value;
+        String name;
+        String provider;
+        int inFlight = 0;
+        long requests = 0;
+        long errors = 0;
+        long rateLimited = 0;
+        long coolingUntil = 0;
+        boolean invalid = false;
+
+        PooledKey(String value) {
+            this.value = value;
+        }
+    }
+}
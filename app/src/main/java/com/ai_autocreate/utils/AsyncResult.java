@@ -0,0 +1,347 @@
+package com.ai_autocreate.utils;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// A Future that can be composed, timed out and cancelled, for API levels without
+// CompletableFuture. Cancelling it cancels the token handed to the work behind it,
+// which aborts an in-flight HTTP call instead of just abandoning its result.
+public class AsyncResult<T> implements Future<T> {
+    private static final int STATE_PENDING = 0;
+    private static final int STATE_SUCCEEDED = 1;
+    private static final int STATE_FAILED = 2;
+    private static final int STATE_CANCELLED = 3;
+
+    private static ScheduledExecutorService timeoutScheduler;
+    private static Handler mainHandler;
+
+    private final CancellationToken token;
+    private final CountDownLatch done = new CountDownLatch(1);
+    private final List<Runnable> listeners = new ArrayList<>();
+    private int state = STATE_PENDING;
+    private T value;
+    private Exception error;
+
+    public interface Callback<T> {
+        void onSuccess(T value);
+        void onError(Exception error);
+    }
+
+    public interface Work<T> {
+        T run(CancellationToken token) throws Exception;
+    }
+
+    public interface Transform<T, R> {
+        R apply(T value) throws Exception;
+    }
+
+    public interface Chain<T, R> {
+        AsyncResult<R> apply(T value) throws Exception;
+    }
+
+    public AsyncResult() {
+        this(new CancellationToken());
+    }
+
+    public AsyncResult(CancellationToken token) {
+        this.token = token;
+    }
+
+    public CancellationToken getToken() {
+        return token;
+    }
+
+    // Runs work on the executor; an exception fails the future
+    public static <T> AsyncResult<T> supply(Executor executor, CancellationToken token, final Work<T> work) {
+        final AsyncResult<T> result = new AsyncResult<>(token);
+        executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (result.isDone()) {
+                        return;
+                    }
+                    try {
+                        result.complete(work.run(result.getToken()));
+                    } catch (Exception e) {
+                        result.fail(e);
+                    }
+                }
+            });
+        return result;
+    }
+
+    public static <T> AsyncResult<T> completed(T value) {
+        AsyncResult<T> result = new AsyncResult<>();
+        result.complete(value);
+        return result;
+    }
+
+    // Succeeds with every value in order once all succeed; fails (and cancels the rest) on the first failure
+    public static <T> AsyncResult<List<T>> allOf(final List<AsyncResult<T>> results) {
+        final AsyncResult<List<T>> combined = new AsyncResult<>();
+        final AtomicInteger remaining = new AtomicInteger(results.size());
+
+        if (results.isEmpty()) {
+            combined.complete(new ArrayList<T>());
+            return combined;
+        }
+
+        for (final AsyncResult<T> result : results) {
+            result.addListener(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!result.isSucceeded()) {
+                            if (combined.fail(result.getError())) {
+                                for (AsyncResult<T> other : results) {
+                                    other.cancel(true);
+                                }
+                            }
+                            return;
+                        }
+
+                        if (remaining.decrementAndGet() == 0) {
+                            List<T> values = new ArrayList<>();
+                            for (AsyncResult<T> each : results) {
+                                values.add(each.value);
+                            }
+                            combined.complete(values);
+                        }
+                    }
+                });
+        }
+
+        combined.token.register(new Runnable() {
+                @Override
+                public void run() {
+                    for (AsyncResult<T> result : results) {
+                        result.cancel(true);
+                    }
+                }
+            });
+        return combined;
+    }
+
+    public boolean complete(T value) {
+        return finish(STATE_SUCCEEDED, value, null);
+    }
+
+    public boolean fail(Exception error) {
+        return finish(STATE_FAILED, null, error);
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if (!finish(STATE_CANCELLED, null, new CancellationException("Cancelled"))) {
+            return false;
+        }
+        token.cancel();
+        return true;
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return state == STATE_CANCELLED;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return state != STATE_PENDING;
+    }
+
+    public synchronized boolean isSucceeded() {
+        return state == STATE_SUCCEEDED;
+    }
+
+    public synchronized Exception getError() {
+        return error;
+    }
+
+    @Override
+    public T get() throws InterruptedException, ExecutionException {
+        done.await();
+        return getValue();
+    }
+
+    @Override
+    public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (!done.await(timeout, unit)) {
+            throw new TimeoutException();
+        }
+        return getValue();
+    }
+
+    // Runs the listener on whichever thread finishes the future, or right away if already done
+    public void addListener(Runnable listener) {
+        synchronized (this) {
+            if (state == STATE_PENDING) {
+                listeners.add(listener);
+                return;
+            }
+        }
+        listener.run();
+    }
+
+    // Delivers the outcome on the main thread; cancellation is not reported
+    public AsyncResult<T> onMainThread(final Callback<T> callback) {
+        addListener(new Runnable() {
+                @Override
+                public void run() {
+                    getMainHandler().post(new Runnable() {
+                            @Override
+                            public void run() {
+                                if (isSucceeded()) {
+                                    callback.onSuccess(value);
+                                } else if (!isCancelled()) {
+                                    callback.onError(getError());
+                                }
+                            }
+                        });
+                }
+            });
+        return this;
+    }
+
+    public <R> AsyncResult<R> then(final Transform<T, R> transform) {
+        final AsyncResult<R> next = new AsyncResult<>(token.createChild());
+        addListener(new Runnable() {
+                @Override
+                public void run() {
+                    if (!isSucceeded()) {
+                        next.fail(getError());
+                        return;
+                    }
+                    try {
+                        next.complete(transform.apply(value));
+                    } catch (Exception e) {
+                        next.fail(e);
+                    }
+                }
+            });
+        propagateCancel(next);
+        return next;
+    }
+
+    public <R> AsyncResult<R> thenAsync(final Chain<T, R> chain) {
+        final AsyncResult<R> next = new AsyncResult<>(token.createChild());
+        addListener(new Runnable() {
+                @Override
+                public void run() {
+                    if (!isSucceeded()) {
+                        next.fail(getError());
+                        return;
+                    }
+                    try {
+                        final AsyncResult<R> inner = chain.apply(value);
+                        inner.addListener(new Runnable() {
+                                @Override
+                                public void run() {
+                                    if (inner.isSucceeded()) {
+                                        next.complete(inner.value);
+                                    } else {
+                                        next.fail(inner.getError());
+                                    }
+                                }
+                            });
+                        next.token.register(new Runnable() {
+                                @Override
+                                public void run() {
+                                    inner.cancel(true);
+                                }
+                            });
+                    } catch (Exception e) {
+                        next.fail(e);
+                    }
+                }
+            });
+        propagateCancel(next);
+        return next;
+    }
+
+    // Fails with a TimeoutException and cancels the work if it hasn't finished in time
+    public AsyncResult<T> withTimeout(long timeoutMs) {
+        final ScheduledFuture<?> timer = getTimeoutScheduler().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (fail(new TimeoutException("Timed out"))) {
+                        token.cancel();
+                    }
+                }
+            }, timeoutMs, TimeUnit.MILLISECONDS);
+
+        addListener(new Runnable() {
+                @Override
+                public void run() {
+                    timer.cancel(false);
+                }
+            });
+        return this;
+    }
+
+    // Cancelling a derived future cancels this one too
+    private void propagateCancel(final AsyncResult<?> next) {
+        next.token.register(new Runnable() {
+                @Override
+                public void run() {
+                    cancel(true);
+                }
+            });
+    }
+
+    private boolean finish(int newState, T newValue, Exception newError) {
+        List<Runnable> toRun;
+        synchronized (this) {
+            if (state != STATE_PENDING) {
+                return false;
+            }
+            state = newState;
+            value = newValue;
+            error = newError;
+            toRun = new ArrayList<>(listeners);
+            listeners.clear();
+        }
+
+        done.countDown();
+        for (Runnable listener : toRun) {
+            listener.run();
+        }
+        return true;
+    }
+
+    private synchronized T getValue() throws ExecutionException {
+        if (state == STATE_CANCELLED) {
+            throw new CancellationException("Cancelled");
+        }
+        if (state == STATE_FAILED) {
+            throw new ExecutionException(error);
+        }
+        return value;
+    }
+
+    private static synchronized ScheduledExecutorService getTimeoutScheduler() {
+        if (timeoutScheduler == null) {
+            timeoutScheduler = Executors.newSingleThreadScheduledExecutor(new ParallelRunner.NamedThreadFactory("async-timeout"));
+        }
+        return timeoutScheduler;
+    }
+
+    private static synchronized Handler getMainHandler() {
+        if (mainHandler == null) {
+            mainHandler = new Handler(Looper.getMainLooper());
+        }
+        return mainHandler;
+    }
+}
@@ -0,0 +1,111 @@
+package com.ai_autocreate.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+// Cooperative cancellation shared between a caller and the work it started.
+// Work checks isCancelled() at safe points and registers callbacks to abort
+// blocking operations (an HTTP call, a child process) the moment cancel() runs.
+public class CancellationToken {
+    // How often await() looks at the token while the latch stays closed
+    private static final long AWAIT_SLICE_MS = 100;
+
+    // A token that is never cancelled, for callers that don't need cancellation
+    public static final CancellationToken NONE = new CancellationToken();
+
+    private final List<Runnable> callbacks = new ArrayList<>();
+    private boolean cancelled = false;
+
+    public void cancel() {
+        if (this == NONE) {
+            return;
+        }
+
+        List<Runnable> toRun;
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            toRun = new ArrayList<>(callbacks);
+            callbacks.clear();
+            notifyAll();
+        }
+
+        for (Runnable callback : toRun) {
+            callback.run();
+        }
+    }
+
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    // Runs the callback on cancel(), or right away if already cancelled
+    public void register(Runnable callback) {
+        synchronized (this) {
+            if (!cancelled) {
+                if (this != NONE) {
+                    callbacks.add(callback);
+                }
+                return;
+            }
+        }
+        callback.run();
+    }
+
+    public synchronized void unregister(Runnable callback) {
+        callbacks.remove(callback);
+    }
+
+    // A token that is cancelled with this one but can also be cancelled on its own
+    public CancellationToken createChild() {
+        final CancellationToken child = new CancellationToken();
+        final Runnable propagate = new Runnable() {
+            @Override
+            public void run() {
+                child.cancel();
+            }
+        };
+        register(propagate);
+
+        // Don't keep finished children reachable from a long-lived parent
+        child.register(new Runnable() {
+            @Override
+            public void run() {
+                unregister(propagate);
+            }
+        });
+        return child;
+    }
+
+    // Sleeps like Thread.sleep but wakes early on cancel; returns false if cancelled
+    public boolean sleep(long ms) throws InterruptedException {
+        long wakeAt = System.currentTimeMillis() + ms;
+        synchronized (this) {
+            long remaining;
+            while (!cancelled && (remaining = wakeAt - System.currentTimeMillis()) > 0) {
+                wait(remaining);
+            }
+            return !cancelled;
+        }
+    }
+
+    // Waits for the latch like CountDownLatch.await, but gives up within a slice of cancel();
+    // returns true only if the latch opened
+    public boolean await(CountDownLatch latch, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        long remaining;
+        while ((remaining = deadline - System.currentTimeMillis()) > 0) {
+            if (isCancelled()) {
+                return false;
+            }
+            if (latch.await(Math.min(remaining, AWAIT_SLICE_MS), TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        }
+        return latch.getCount() == 0;
+    }
+}
@@ -0,0 +1,229 @@
+package com.ai_autocreate.utils;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Rolling health record and circuit breaker for one inference endpoint.
+// CLOSED lets everything through; OPEN fails fast until the cooldown ends; HALF_OPEN
+// lets a single trial call through and closes again only if it succeeds.
+public class EndpointHealth {
+    public static final String STATE_CLOSED = "closed";
+    public static final String STATE_OPEN = "open";
+    public static final String STATE_HALF_OPEN = "half_open";
+
+    private static final int WINDOW_SIZE = 20;
+    private static final int MIN_CALLS = 5;
+    private static final double FAILURE_RATE_THRESHOLD = 0.5;
+    // Latency at which the health score bottoms out at half; it never opens the circuit
+    private static final long SLOW_CALL_MS = 20000; // 20 seconds
+    private static final long BASE_COOLDOWN_MS = 30000; // 30 seconds
+    private static final long MAX_COOLDOWN_MS = 5 * 60 * 1000; // 5 minutes
+
+    private static final ConcurrentHashMap<String, EndpointHealth> registry = new ConcurrentHashMap<>();
+
+    private final String endpoint;
+    private final boolean[] failures = new boolean[WINDOW_SIZE];
+    private final long[] latencies = new long[WINDOW_SIZE];
+    private int windowIndex = 0;
+    private int windowCount = 0;
+
+    private String state = STATE_CLOSED;
+    private long openedAt = 0;
+    private long cooldownMs = BASE_COOLDOWN_MS;
+    private boolean trialInFlight = false;
+    private long totalCalls = 0;
+    private long totalFailures = 0;
+    private long rejectedCalls = 0;
+
+    private EndpointHealth(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    public static EndpointHealth forEndpoint(String endpoint) {
+        EndpointHealth health = registry.get(endpoint);
+        if (health == null) {
+            EndpointHealth created = new EndpointHealth(endpoint);
+            health = registry.putIfAbsent(endpoint, created);
+            if (health == null) {
+                health = created;
+            }
+        }
+        return health;
+    }
+
+    // Returns null for endpoints that have not been called in this process
+    public static EndpointHealth peek(String endpoint) {
+        return endpoint != null ? registry.get(endpoint) : null;
+    }
+
+    public static List<EndpointHealth> getAll() {
+        return new ArrayList<>(registry.values());
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public synchronized boolean allowRequest() {
+        if (STATE_OPEN.equals(state)) {
+            if (System.currentTimeMillis() - openedAt < cooldownMs) {
+                rejectedCalls++;
+                return false;
+            }
+            state = STATE_HALF_OPEN;
+            trialInFlight = false;
+        }
+
+        if (STATE_HALF_OPEN.equals(state)) {
+            if (trialInFlight) {
+                rejectedCalls++;
+                return false;
+            }
+            trialInFlight = true;
+        }
+
+        return true;
+    }
+
+    public synchronized void recordSuccess(long latencyMs) {
+        totalCalls++;
+
+        if (STATE_HALF_OPEN.equals(state)) {
+            // Trial call went through; start over with a clean window
+            state = STATE_CLOSED;
+            trialInFlight = false;
+            cooldownMs = BASE_COOLDOWN_MS;
+            windowCount = 0;
+            windowIndex = 0;
+        }
+
+        addToWindow(false, latencyMs);
+        evaluate();
+    }
+
+    public synchronized void recordFailure(long latencyMs) {
+        totalCalls++;
+        totalFailures++;
+
+        if (STATE_HALF_OPEN.equals(state)) {
+            // Still broken; back off longer before the next trial
+            trialInFlight = false;
+            cooldownMs = Math.min(cooldownMs * 2, MAX_COOLDOWN_MS);
+            open();
+            return;
+        }
+
+        addToWindow(true, latencyMs);
+        evaluate();
+    }
+
+    // A call that ended for reasons unrelated to endpoint health (e.g. a bad request)
+    public synchronized void releaseTrial() {
+        trialInFlight = false;
+    }
+
+    public synchronized String getState() {
+        if (STATE_OPEN.equals(state) && System.currentTimeMillis() - openedAt >= cooldownMs) {
+            return STATE_HALF_OPEN;
+        }
+        return state;
+    }
+
+    public synchronized int getSampleCount() {
+        return windowCount;
+    }
+
+    public synchronized double getFailureRate() {
+        if (windowCount == 0) {
+            return 0;
+        }
+
+        int failed = 0;
+        for (int i = 0; i < windowCount; i++) {
+            if (failures[i]) {
+                failed++;
+            }
+        }
+        return (double) failed / windowCount;
+    }
+
+    // Latency percentile over the rolling window, or -1 with no data
+    public synchronized long getLatencyPercentile(double percentile) {
+        if (windowCount == 0) {
+            return -1;
+        }
+
+        long[] sorted = Arrays.copyOf(latencies, windowCount);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile * windowCount) - 1;
+        return sorted[Math.max(0, Math.min(windowCount - 1, index))];
+    }
+
+    // 1.0 is a fast, error-free endpoint; 0 is an open circuit
+    public synchronized double getHealthScore() {
+        if (STATE_OPEN.equals(getState())) {
+            return 0;
+        }
+
+        if (windowCount == 0) {
+            return 1;
+        }
+
+        long p90 = getLatencyPercentile(0.9);
+        double latencyFactor = 1 - 0.5 * Math.min(1.0, (double) p90 / SLOW_CALL_MS);
+        return (1 - getFailureRate()) * latencyFactor;
+    }
+
+    public synchronized JSONObject toJSON() {
+        JSONObject json = new JSONObject();
+
+        try {
+            json.put("endpoint", endpoint);
+            json.put("state", getState());
+            json.put("health_score", getHealthScore());
+            json.put("failure_rate", getFailureRate());
+            json.put("p50_latency_ms", getLatencyPercentile(0.5));
+            json.put("p90_latency_ms", getLatencyPercentile(0.9));
+            json.put("window_calls", windowCount);
+            json.put("total_calls", totalCalls);
+            json.put("total_failures", totalFailures);
+            json.put("rejected_calls", rejectedCalls);
+            if (STATE_OPEN.equals(state)) {
+                json.put("retry_at", openedAt + cooldownMs);
+            }
+        } catch (JSONException e) {
+            // Ignore
+        }
+
+        return json;
+    }
+
+    private void addToWindow(boolean failed, long latencyMs) {
+        failures[windowIndex] = failed;
+        latencies[windowIndex] = latencyMs;
+        windowIndex = (windowIndex + 1) % WINDOW_SIZE;
+        windowCount = Math.min(windowCount + 1, WINDOW_SIZE);
+    }
+
+    private void evaluate() {
+        if (!STATE_CLOSED.equals(state) || windowCount < MIN_CALLS) {
+            return;
+        }
+
+        // Only failures trip the circuit. Slow successes are normal for image, speech and upload
+        // calls; latency only lowers the health score and sets the hedge delay.
+        if (getFailureRate() >= FAILURE_RATE_THRESHOLD) {
+            open();
+        }
+    }
+
+    private void open() {
+        state = STATE_OPEN;
+        openedAt = System.currentTimeMillis();
+    }
+}
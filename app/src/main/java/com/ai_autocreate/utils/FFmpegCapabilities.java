@@ -0,0 +1,371 @@
+package com.ai_autocreate.utils;
+
+import android.content.Context;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// What the ffmpeg binary can do: its version and the encoders, decoders and filters it was
+// built with. Probing takes a few ffmpeg processes, so it happens once per binary path and
+// modification time. The result is kept for the process and in ffmpeg_capabilities.json in
+// the config directory, so later launches only stat the binary. Replacing the binary
+// changes its mtime, which triggers a new probe.
+public class FFmpegCapabilities {
+    // Budget for the whole probe, all four ffmpeg runs together
+    private static final long PROBE_TIMEOUT_MS = 10000;
+    // Entries written before a list could be unknown may hold empty lists from failed probes
+    private static final int CACHE_FORMAT = 2;
+
+    private static FFmpegCapabilities instance;
+
+    private final File cacheFile;
+    private final Map<String, Capabilities> probed = new HashMap<>();
+    private JSONObject diskCache;
+
+    private FFmpegCapabilities() {
+        this.cacheFile = new File(StoragePaths.getConfigDir() + "/ffmpeg_capabilities.json");
+    }
+
+    public static synchronized FFmpegCapabilities getInstance() {
+        if (instance == null) {
+            instance = new FFmpegCapabilities();
+        }
+        return instance;
+    }
+
+    // The bundled binary, then one in the app's external directory, then the system ffmpeg
+    public static String resolveBinaryPath(Context context) {
+        // Check if FFmpeg binary exists in app directory
+        File ffmpegBinary = new File(context.getFilesDir(), "ffmpeg");
+        if (ffmpegBinary.exists()) {
+            return ffmpegBinary.getAbsolutePath();
+        }
+
+        // Check if FFmpeg binary exists in external storage
+        ffmpegBinary = new File("/storage/emulated/0/AIAutoCreate/ffmpeg");
+        if (ffmpegBinary.exists()) {
+            return ffmpegBinary.getAbsolutePath();
+        }
+
+        // Default to system ffmpeg (if available)
+        return "ffmpeg";
+    }
+
+    // Probes the binary if it hasn't been seen in this version; may take a few seconds the first time
+    public Capabilities get(String binaryPath) {
+        String key = getCacheKey(binaryPath);
+
+        synchronized (this) {
+            Capabilities known = peekLocked(key);
+            if (known != null) {
+                return known;
+            }
+        }
+
+        // Probe outside the lock; a concurrent probe of the same binary only costs a duplicate
+        Capabilities capabilities = probe(binaryPath);
+
+        synchronized (this) {
+            probed.put(key, capabilities);
+            // A binary found on PATH has no stable identity to check later, and a failed or partial probe
+            // may only mean the binary isn't executable yet or was slow, so only remember those in memory
+            if (capabilities.isAvailable() && capabilities.isListed() && new File(binaryPath).isAbsolute()) {
+                saveToDisk(key, capabilities);
+            }
+        }
+        return capabilities;
+    }
+
+    // Returns what is already known about the binary without probing, or null
+    public synchronized Capabilities peek(String binaryPath) {
+        return peekLocked(getCacheKey(binaryPath));
+    }
+
+    private Capabilities peekLocked(String key) {
+        Capabilities known = probed.get(key);
+        if (known != null) {
+            return known;
+        }
+
+        JSONObject entry = getDiskCache().optJSONObject(key);
+        if (entry != null && entry.optInt("format") == CACHE_FORMAT) {
+            known = Capabilities.fromJSON(entry);
+            probed.put(key, known);
+        }
+        return known;
+    }
+
+    private static String getCacheKey(String binaryPath) {
+        File binary = new File(binaryPath);
+        return binaryPath + "|" + binary.length() + "|" + binary.lastModified();
+    }
+
+    private Capabilities probe(String binaryPath) {
+        long deadline = System.currentTimeMillis() + PROBE_TIMEOUT_MS;
+        List<String> versionOutput = runProbe(binaryPath, "-version", deadline);
+        if (versionOutput == null) {
+            // No usable binary; FFmpegKit may still provide ffmpeg, but its build can't be listed from here
+            boolean ffmpegKit;
+            try {
+                Class.forName("com.arthenica.ffmpegkit.FFmpegKit");
+                ffmpegKit = true;
+            } catch (ClassNotFoundException e) {
+                ffmpegKit = false;
+            }
+            return new Capabilities(ffmpegKit, ffmpegKit ? "FFmpegKit" : "Not available", null, null, null);
+        }
+
+        String version = !versionOutput.isEmpty() && versionOutput.get(0).contains("ffmpeg version")
+            ? versionOutput.get(0) : "Unknown version";
+
+        // A list that couldn't be read stays unknown (null) rather than empty
+        Set<String> encoders = parseCodecList(runProbe(binaryPath, "-encoders", deadline));
+        Set<String> decoders = parseCodecList(runProbe(binaryPath, "-decoders", deadline));
+        Set<String> filters = parseFilterList(runProbe(binaryPath, "-filters", deadline));
+        return new Capabilities(true, version, encoders, decoders, filters);
+    }
+
+    // Output lines of a successful `ffmpeg -hide_banner <option>`, or null. The process is
+    // killed at the deadline, which also ends a read that a hung binary would never finish.
+    private static List<String> runProbe(String binaryPath, String option, long deadline) {
+        if (deadline - System.currentTimeMillis() <= 0) {
+            return null;
+        }
+
+        Process process = null;
+        ScheduledFuture<?> timeout = null;
+        try {
+            ProcessBuilder processBuilder = new ProcessBuilder(binaryPath, "-hide_banner", option);
+            processBuilder.redirectErrorStream(true);
+            process = processBuilder.start();
+            process.getOutputStream().close();
+
+            final Process started = process;
+            final AtomicBoolean timedOut = new AtomicBoolean(false);
+            timeout = FFmpegRunner.getWatchdogScheduler().schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        timedOut.set(true);
+                        started.destroy();
+                    }
+                }, deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+
+            List<String> lines = new ArrayList<>();
+            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+
+            long remaining = deadline - System.currentTimeMillis();
+            if (timedOut.get() || remaining <= 0 || !process.waitFor(remaining, TimeUnit.MILLISECONDS)) {
+                process.destroyForcibly();
+                return null;
+            }
+            return process.exitValue() == 0 ? lines : null;
+
+        } catch (Exception e) {
+            if (process != null) {
+                process.destroy();
+            }
+            return null;
+        } finally {
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+        }
+    }
+
+    // Entries follow a "------" line as "<flags> <name> <description>", e.g. " V....D libx264  H.264 ..."
+    private static Set<String> parseCodecList(List<String> lines) {
+        if (lines == null) {
+            return null;
+        }
+
+        Set<String> names = new HashSet<>();
+        boolean inList = false;
+        for (String line : lines) {
+            String trimmed = line.trim();
+            if (!inList) {
+                inList = trimmed.startsWith("---");
+                continue;
+            }
+
+            String[] parts = trimmed.split("\\s+");
+            if (parts.length >= 2) {
+                names.add(parts[1]);
+            }
+        }
+        return names;
+    }
+
+    // Entries look like " TSC scale  V->V  Scale the input video size"; legend lines have no "->"
+    private static Set<String> parseFilterList(List<String> lines) {
+        if (lines == null) {
+            return null;
+        }
+
+        Set<String> names = new HashSet<>();
+        for (String line : lines) {
+            String[] parts = line.trim().split("\\s+");
+            if (parts.length >= 3 && parts[2].contains("->")) {
+                names.add(parts[1]);
+            }
+        }
+        return names;
+    }
+
+    private JSONObject getDiskCache() {
+        if (diskCache != null) {
+            return diskCache;
+        }
+
+        diskCache = new JSONObject();
+        if (cacheFile.exists()) {
+            try {
+                diskCache = new JSONObject(FileUtils.readFromFile(cacheFile));
+            } catch (JSONException e) {
+                cacheFile.delete();
+            }
+        }
+        return diskCache;
+    }
+
+    private void saveToDisk(String key, Capabilities capabilities) {
+        JSONObject cache = getDiskCache();
+        String binaryPath = key.substring(0, key.indexOf('|'));
+
+        try {
+            // Keep one entry per binary; older versions of it are no longer useful
+            List<String> stale = new ArrayList<>();
+            JSONArray names = cache.names();
+            for (int i = 0; names != null && i < names.length(); i++) {
+                String name = names.getString(i);
+                if (name.startsWith(binaryPath + "|")) {
+                    stale.add(name);
+                }
+            }
+            for (String name : stale) {
+                cache.remove(name);
+            }
+            cache.put(key, capabilities.toJSON().put("format", CACHE_FORMAT));
+        } catch (JSONException e) {
+            return;
+        }
+
+        File temp = new File(cacheFile.getPath() + ".tmp");
+        if (!FileUtils.writeToFile(temp, cache.toString())) {
+            return;
+        }
+        // Overwrite by rename; the old cache stays readable until the new one replaces it
+        if (!temp.renameTo(cacheFile)) {
+            temp.delete();
+        }
+    }
+
+    // Each component list is null when it couldn't be read, e.g. for FFmpegKit or after a probe timed out
+    public static class Capabilities {
+        private final boolean available;
+        private final String version;
+        private final Set<String> encoders;
+        private final Set<String> decoders;
+        private final Set<String> filters;
+
+        Capabilities(boolean available, String version, Set<String> encoders, Set<String> decoders, Set<String> filters) {
+            this.available = available;
+            this.version = version;
+            this.encoders = encoders != null ? Collections.unmodifiableSet(encoders) : null;
+            this.decoders = decoders != null ? Collections.unmodifiableSet(decoders) : null;
+            this.filters = filters != null ? Collections.unmodifiableSet(filters) : null;
+        }
+
+        public boolean isAvailable() {
+            return available;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+
+        // Whether all three component lists are known
+        public boolean isListed() {
+            return encoders != null && decoders != null && filters != null;
+        }
+
+        // A component of a list that couldn't be read is assumed present, as before probing existed
+        public boolean hasEncoder(String name) {
+            return encoders == null || encoders.contains(name);
+        }
+
+        public boolean hasDecoder(String name) {
+            return decoders == null || decoders.contains(name);
+        }
+
+        public boolean hasFilter(String name) {
+            return filters == null || filters.contains(name);
+        }
+
+        // The listed components; empty when the list is unknown, check isListed() first
+        public Set<String> getEncoders() {
+            return encoders != null ? encoders : Collections.<String>emptySet();
+        }
+
+        public Set<String> getDecoders() {
+            return decoders != null ? decoders : Collections.<String>emptySet();
+        }
+
+        public Set<String> getFilters() {
+            return filters != null ? filters : Collections.<String>emptySet();
+        }
+
+        // Unknown lists are left out
+        public JSONObject toJSON() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("available", available);
+            json.put("version", version);
+            if (encoders != null) {
+                json.put("encoders", new JSONArray(encoders));
+            }
+            if (decoders != null) {
+                json.put("decoders", new JSONArray(decoders));
+            }
+            if (filters != null) {
+                json.put("filters", new JSONArray(filters));
+            }
+            return json;
+        }
+
+        static Capabilities fromJSON(JSONObject json) {
+            return new Capabilities(json.optBoolean("available", false), json.optString("version", "Unknown version"),
+                                    toSet(json.optJSONArray("encoders")), toSet(json.optJSONArray("decoders")),
+                                    toSet(json.optJSONArray("filters")));
+        }
+
+        private static Set<String> toSet(JSONArray array) {
+            if (array == null) {
+                return null;
+            }
+
+            Set<String> set = new HashSet<>();
+            for (int i = 0; i < array.length(); i++) {
+                set.add(array.optString(i));
+            }
+            return set;
+        }
+    }
+}
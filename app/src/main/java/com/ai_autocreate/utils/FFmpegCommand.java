@@ -0,0 +1,174 @@
+package com.ai_autocreate.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// Builds ffmpeg's argument list directly, so paths and filtergraphs never go through
+// string splitting and quoting. Options added to an input or output are emitted right
+// before its -i or file name, in the order they were added.
+public class FFmpegCommand {
+    private final List<String> globalArgs = new ArrayList<>();
+    private final List<Input> inputs = new ArrayList<>();
+    private final List<Output> outputs = new ArrayList<>();
+    private FilterGraph filterGraph;
+
+    public FFmpegCommand overwrite() {
+        globalArgs.add("-y");
+        return this;
+    }
+
+    public FFmpegCommand option(String name, Object value) {
+        globalArgs.add(name);
+        globalArgs.add(String.valueOf(value));
+        return this;
+    }
+
+    public Input addInput(String path) {
+        Input input = new Input(inputs.size(), path);
+        inputs.add(input);
+        return input;
+    }
+
+    public FFmpegCommand setFilterGraph(FilterGraph filterGraph) {
+        this.filterGraph = filterGraph;
+        return this;
+    }
+
+    public Output addOutput(String path) {
+        Output output = new Output(path);
+        outputs.add(output);
+        return output;
+    }
+
+    // Arguments for ffmpeg, without the binary itself
+    public List<String> toArgs() {
+        List<String> args = new ArrayList<>(globalArgs);
+        for (Input input : inputs) {
+            args.addAll(input.options);
+            args.add("-i");
+            args.add(input.path);
+        }
+        if (filterGraph != null && !filterGraph.isEmpty()) {
+            args.add("-filter_complex");
+            args.add(filterGraph.toString());
+        }
+        for (Output output : outputs) {
+            args.addAll(output.options);
+            args.add(output.path);
+        }
+        return args;
+    }
+
+    // Readable, shell-style form for logs and for showing the command to the user
+    @Override
+    public String toString() {
+        StringBuilder command = new StringBuilder();
+        for (String arg : toArgs()) {
+            if (command.length() > 0) {
+                command.append(" ");
+            }
+            command.append(quote(arg));
+        }
+        return command.toString();
+    }
+
+    private static String quote(String arg) {
+        if (!arg.isEmpty() && arg.matches("[\\w@%+=:,./\\[\\]-]+")) {
+            return arg;
+        }
+        return "'" + arg.replace("'", "'\\''") + "'";
+    }
+
+    private static String formatSeconds(long ms) {
+        return String.format(Locale.US, "%.3f", ms / 1000.0);
+    }
+
+    public static class Input {
+        private final int index;
+        private final String path;
+        private final List<String> options = new ArrayList<>();
+
+        private Input(int index, String path) {
+            this.index = index;
+            this.path = path;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        // Stream specifier for use as a filtergraph pad, e.g. "1:a"
+        public String stream(String type) {
+            return index + ":" + type;
+        }
+
+        public Input format(String format) {
+            return option("-f", format);
+        }
+
+        // Repeats a still image for as long as the output needs it
+        public Input loop() {
+            return option("-loop", 1);
+        }
+
+        public Input frameRate(int frameRate) {
+            return option("-framerate", frameRate);
+        }
+
+        public Input duration(long ms) {
+            return option("-t", formatSeconds(ms));
+        }
+
+        public Input option(String name, Object value) {
+            options.add(name);
+            options.add(String.valueOf(value));
+            return this;
+        }
+    }
+
+    public static class Output {
+        private final String path;
+        private final List<String> options = new ArrayList<>();
+
+        private Output(String path) {
+            this.path = path;
+        }
+
+        // A filtergraph output label or an input stream specifier
+        public Output map(String label) {
+            return option("-map", label.contains(":") ? label : "[" + label + "]");
+        }
+
+        public Output videoCodec(String codec) {
+            return option("-c:v", codec);
+        }
+
+        public Output audioCodec(String codec) {
+            return option("-c:a", codec);
+        }
+
+        public Output codec(String codec) {
+            return option("-c", codec);
+        }
+
+        public Output frameRate(int frameRate) {
+            return option("-r", frameRate);
+        }
+
+        public Output duration(long ms) {
+            return option("-t", formatSeconds(ms));
+        }
+
+        public Output flag(String name) {
+            options.add(name);
+            return this;
+        }
+
+        public Output option(String name, Object value) {
+            options.add(name);
+            options.add(String.valueOf(value));
+            return this;
+        }
+    }
+}
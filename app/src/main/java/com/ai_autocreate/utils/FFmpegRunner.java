@@ -1,179 +1,327 @@
 package com.ai_autocreate.utils;
 
 import android.content.Context;
-import android.os.AsyncTask;
 
 import com.ai_autocreate.R;
 
 import java.io.BufferedReader;
-import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class FFmpegRunner {
+    private static final long CANCEL_GRACE_MS = 2000;
+    private static final long EXIT_WAIT_MS = 10000;
+    private static final long DEFAULT_STALL_TIMEOUT_MS = 60000;
+    private static final long WATCHDOG_INTERVAL_MS = 5000;
+    private static final int MAX_LOG_LINES = 200;
+
+    private static ScheduledExecutorService watchdogScheduler;
+    private static ExecutorService asyncExecutor;
+
     private Context context;
     private JSONLogger logger;
-    private boolean isFFmpegAvailable;
+    private String binaryPath;
+    private volatile long stallTimeoutMs = DEFAULT_STALL_TIMEOUT_MS;
 
+    // Cheap to construct: what the binary supports is probed once and cached by FFmpegCapabilities
     public FFmpegRunner(Context context) {
         this.context = context;
         this.logger = new JSONLogger(context);
-        this.isFFmpegAvailable = checkFFmpegAvailability();
+        this.binaryPath = FFmpegCapabilities.resolveBinaryPath(context);
     }
 
     public FFmpegResult execute(String command) {
-        if (!isFFmpegAvailable) {
+        return execute(command, null, CancellationToken.NONE);
+    }
+
+    public FFmpegResult execute(String command, CancellationToken token) {
+        return execute(command, null, token);
+    }
+
+    // Streams ffmpeg's output as it runs: progress reports (frame, time, speed) go to the
+    // listener, and only the last MAX_LOG_LINES log lines are kept for the result. There is no
+    // wall-clock timeout, since a long export can legitimately take many minutes; instead the
+    // process is killed once it has gone stallTimeoutMs without progress or new output.
+    // Progress comes from `-progress pipe:1`, which ffmpeg writes whatever -loglevel or
+    // -nostats say, so a quiet but healthy encode is never mistaken for a stuck one. A command
+    // that sends -progress somewhere else runs without the watchdog. Cancelling the token
+    // kills the process too. Both return null.
+    public FFmpegResult execute(String command, ProgressListener listener, CancellationToken token) {
+        return execute(command, FFmpegScheduler.LANE_INTERACTIVE, null, listener, token);
+    }
+
+    // The string form is for commands typed by the user; code should build an FFmpegCommand
+    public FFmpegResult execute(String command, int lane, String projectId, ProgressListener listener, CancellationToken token) {
+        return execute(parseCommand(command), command, lane, projectId, listener, token);
+    }
+
+    public FFmpegResult execute(FFmpegCommand command, ProgressListener listener, CancellationToken token) {
+        return execute(command, FFmpegScheduler.LANE_INTERACTIVE, null, listener, token);
+    }
+
+    // The argument list is passed to ffmpeg exactly as built, without any parsing
+    public FFmpegResult execute(FFmpegCommand command, int lane, String projectId, ProgressListener listener,
+                                CancellationToken token) {
+        return execute(command.toArgs(), command.toString(), lane, projectId, listener, token);
+    }
+
+    // Waits for a slot from FFmpegScheduler in the given lane before starting ffmpeg, so
+    // exports from several projects share the cores instead of oversubscribing them
+    private FFmpegResult execute(List<String> args, String command, int lane, String projectId, ProgressListener listener,
+                                 CancellationToken token) {
+        if (!isFFmpegAvailable()) {
             logger.log("FFmpegRunner", "FFmpeg is not available");
             return null;
         }
 
+        FFmpegScheduler.Slot slot;
+        try {
+            slot = FFmpegScheduler.getInstance().acquire(lane, projectId, token);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        if (slot == null) {
+            return null;
+        }
+
+        try {
+            return runProcess(args, command, listener, token);
+        } finally {
+            slot.release();
+        }
+    }
+
+    private FFmpegResult runProcess(List<String> args, String command, ProgressListener listener, CancellationToken token) {
+        if (token.isCancelled()) {
+            return null;
+        }
+
+        Runnable killProcess = null;
+        ScheduledFuture<?> watchdog = null;
+
         try {
-            // Parse command
-            List<String> commandParts = parseCommand(command);
+            // Progress reports on stdout are what the watchdog relies on; -nostats drops the
+            // duplicate stats lines from the log. Global options go before everything else.
+            boolean ownProgress = !args.contains("-progress");
+            List<String> commandParts = new ArrayList<>(args.size() + 4);
+            commandParts.add(binaryPath);
+            if (ownProgress) {
+                commandParts.add("-progress");
+                commandParts.add("pipe:1");
+                commandParts.add("-nostats");
+            }
+            commandParts.addAll(args);
 
             // Create process
             ProcessBuilder processBuilder = new ProcessBuilder(commandParts);
             processBuilder.redirectErrorStream(true);
 
             // Start process
-            Process process = processBuilder.start();
+            final Process process = processBuilder.start();
 
-            // Read output
-            StringBuilder output = new StringBuilder();
+            // ffmpeg polls stdin for keyboard commands; give it EOF rather than a pipe that never answers
+            process.getOutputStream().close();
+
+            // Killing the process closes its output, which ends the read loop below
+            killProcess = new Runnable() {
+                @Override
+                public void run() {
+                    process.destroy();
+                }
+            };
+            token.register(killProcess);
+
+            final ProgressParser parser = new ProgressParser();
+            if (ownProgress) {
+                watchdog = startWatchdog(process, parser);
+            }
+
+            // Read output; stats lines end in \r, which readLine also treats as a line break
+            LogTail log = new LogTail(MAX_LOG_LINES);
             BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
             String line;
 
             while ((line = reader.readLine()) != null) {
-                output.append(line).append("\n");
+                // Progress reports would push the errors out of the kept lines
+                if (!ProgressParser.isReportLine(line)) {
+                    log.add(line);
+                }
+                Progress progress = parser.parse(line);
+                if (progress != null && listener != null) {
+                    listener.onProgress(progress);
+                }
             }
 
-            // Wait for process to complete
-            boolean finished = process.waitFor(30, TimeUnit.SECONDS);
+            if (token.isCancelled() || parser.stalled) {
+                // destroy() may only ask ffmpeg to stop; don't let it outlive the cancel
+                if (!process.waitFor(CANCEL_GRACE_MS, TimeUnit.MILLISECONDS)) {
+                    process.destroyForcibly();
+                }
+                if (parser.stalled) {
+                    logger.log("FFmpegRunner", "FFmpeg command stalled for " + stallTimeoutMs + "ms: " + command
+                               + "\n" + log.toString());
+                } else {
+                    logger.log("FFmpegRunner", "FFmpeg command cancelled: " + command);
+                }
+                return null;
+            }
+
+            // Its output is closed, so ffmpeg is already on its way out
+            boolean finished = process.waitFor(EXIT_WAIT_MS, TimeUnit.MILLISECONDS);
 
             if (!finished) {
                 process.destroyForcibly();
-                logger.log("FFmpegRunner", "FFmpeg command timed out: " + command);
+                logger.log("FFmpegRunner", "FFmpeg command did not exit: " + command);
                 return null;
             }
 
             int exitCode = process.exitValue();
 
-            return new FFmpegResult(exitCode, output.toString());
+            return new FFmpegResult(exitCode, log.toString());
 
         } catch (Exception e) {
-            logger.log("FFmpegRunner", "Error executing FFmpeg command: " + e.getMessage());
+            if (!token.isCancelled()) {
+                logger.log("FFmpegRunner", "Error executing FFmpeg command: " + e.getMessage());
+            }
             return null;
+        } finally {
+            if (watchdog != null) {
+                watchdog.cancel(false);
+            }
+            if (killProcess != null) {
+                token.unregister(killProcess);
+            }
         }
     }
 
-    public void executeAsync(String command, FFmpegCallback callback) {
-        new ExecuteFFmpegTask(command, callback).execute();
+    // How long ffmpeg may go without progress or output before it is considered stuck
+    public void setStallTimeout(long stallTimeoutMs) {
+        this.stallTimeoutMs = stallTimeoutMs;
     }
 
-    private List<String> parseCommand(String command) {
+    private ScheduledFuture<?> startWatchdog(final Process process, final ProgressParser parser) {
+        final long timeoutMs = stallTimeoutMs;
+        return getWatchdogScheduler().scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    if (!parser.stalled && System.currentTimeMillis() - parser.lastActivityAt > timeoutMs) {
+                        parser.stalled = true;
+                        process.destroy();
+                    }
+                }
+            }, WATCHDOG_INTERVAL_MS, WATCHDOG_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    // Shared with FFmpegCapabilities, whose probes are bounded the same way
+    static synchronized ScheduledExecutorService getWatchdogScheduler() {
+        if (watchdogScheduler == null) {
+            watchdogScheduler = Executors.newSingleThreadScheduledExecutor(new ParallelRunner.NamedThreadFactory("ffmpeg-watchdog"));
+        }
+        return watchdogScheduler;
+    }
+
+    // Runs off the main thread and reports on it; cancelling the result kills the process
+    public AsyncResult<FFmpegResult> executeAsync(final String command, final FFmpegCallback callback) {
+        return AsyncResult.supply(getAsyncExecutor(), new CancellationToken(),
+            new AsyncResult.Work<FFmpegResult>() {
+                @Override
+                public FFmpegResult run(CancellationToken token) throws Exception {
+                    FFmpegResult result = execute(command, null, token);
+                    if (result == null) {
+                        throw new IOException("FFmpeg execution failed");
+                    }
+                    return result;
+                }
+            }).onMainThread(new AsyncResult.Callback<FFmpegResult>() {
+                @Override
+                public void onSuccess(FFmpegResult result) {
+                    if (callback != null) {
+                        callback.onSuccess(result);
+                    }
+                }
+
+                @Override
+                public void onError(Exception error) {
+                    if (callback != null) {
+                        callback.onError(error != null && error.getMessage() != null ? error.getMessage() : "Unknown error");
+                    }
+                }
+            });
+    }
+
+    // Callers only wait here; FFmpegScheduler decides how many processes actually run
+    private static synchronized ExecutorService getAsyncExecutor() {
+        if (asyncExecutor == null) {
+            asyncExecutor = Executors.newCachedThreadPool(new ParallelRunner.NamedThreadFactory("ffmpeg"));
+        }
+        return asyncExecutor;
+    }
+
+    // Splits a typed command on spaces outside quotes. A quote only ends at the same kind of
+    // quote, so "it's" and '"a"' keep their inner quote, and "" gives an empty argument.
+    private static List<String> parseCommand(String command) {
         List<String> parts = new ArrayList<>();
-        boolean inQuotes = false;
+        char quote = 0;
+        boolean hasPart = false;
         StringBuilder currentPart = new StringBuilder();
 
         for (int i = 0; i < command.length(); i++) {
             char c = command.charAt(i);
 
-            if (c == '"' || c == '\'') {
-                inQuotes = !inQuotes;
-            } else if (c == ' ' && !inQuotes) {
-                if (currentPart.length() > 0) {
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                } else {
+                    currentPart.append(c);
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+                hasPart = true;
+            } else if (Character.isWhitespace(c)) {
+                if (hasPart) {
                     parts.add(currentPart.toString());
                     currentPart = new StringBuilder();
+                    hasPart = false;
                 }
             } else {
                 currentPart.append(c);
+                hasPart = true;
             }
         }
 
-        if (currentPart.length() > 0) {
+        if (hasPart) {
             parts.add(currentPart.toString());
         }
 
-        // Add ffmpeg binary path
-        parts.add(0, getFFmpegBinaryPath());
-
         return parts;
     }
 
-    private String getFFmpegBinaryPath() {
-        // Check if FFmpeg binary exists in app directory
-        File ffmpegBinary = new File(context.getFilesDir(), "ffmpeg");
-        if (ffmpegBinary.exists()) {
-            return ffmpegBinary.getAbsolutePath();
-        }
-
-        // Check if FFmpeg binary exists in external storage
-        ffmpegBinary = new File("/storage/emulated/0/AIAutoCreate/ffmpeg");
-        if (ffmpegBinary.exists()) {
-            return ffmpegBinary.getAbsolutePath();
-        }
-
-        // Default to system ffmpeg (if available)
-        return "ffmpeg";
+    // Probes the binary on first use, so call it off the main thread unless peekCapabilities() had an answer
+    public FFmpegCapabilities.Capabilities getCapabilities() {
+        return FFmpegCapabilities.getInstance().get(binaryPath);
     }
 
-    private boolean checkFFmpegAvailability() {
-        try {
-            // Try to run ffmpeg -version to check if it's available
-            ProcessBuilder processBuilder = new ProcessBuilder(getFFmpegBinaryPath(), "-version");
-            Process process = processBuilder.start();
-
-            boolean finished = process.waitFor(5, TimeUnit.SECONDS);
-
-            if (!finished) {
-                process.destroyForcibly();
-                return false;
-            }
-
-            return process.exitValue() == 0;
-
-        } catch (Exception e) {
-            logger.log("FFmpegRunner", "Error checking FFmpeg availability: " + e.getMessage());
-
-            // Try to check if FFmpegKit is available
-            try {
-                Class.forName("com.arthenica.ffmpegkit.FFmpegKit");
-                return true;
-            } catch (ClassNotFoundException ex) {
-                return false;
-            }
-        }
+    // What is already known about the binary, without probing; null if it hasn't been probed yet
+    public FFmpegCapabilities.Capabilities peekCapabilities() {
+        return FFmpegCapabilities.getInstance().peek(binaryPath);
     }
 
     public boolean isFFmpegAvailable() {
-        return isFFmpegAvailable;
+        return getCapabilities().isAvailable();
     }
 
     public String getFFmpegVersion() {
-        if (!isFFmpegAvailable) {
-            return "Not available";
-        }
-
-        try {
-            ProcessBuilder processBuilder = new ProcessBuilder(getFFmpegBinaryPath(), "-version");
-            Process process = processBuilder.start();
-
-            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-            String line = reader.readLine();
-
-            if (line != null && line.contains("ffmpeg version")) {
-                return line;
-            } else {
-                return "Unknown version";
-            }
-
-        } catch (Exception e) {
-            logger.log("FFmpegRunner", "Error getting FFmpeg version: " + e.getMessage());
-            return "Error getting version";
-        }
+        return getCapabilities().getVersion();
     }
 
     public static class FFmpegResult {
@@ -198,38 +346,203 @@ public class FFmpegRunner {
         }
     }
 
-    public interface FFmpegCallback {
-        void onSuccess(FFmpegResult result);
-        void onError(String errorMessage);
+    // One stats line from a running encode; times are in milliseconds, unknown values are -1
+    public static class Progress {
+        private final long frame;
+        private final double fps;
+        private final long timeMs;
+        private final double speed;
+        private final long durationMs;
+
+        public Progress(long frame, double fps, long timeMs, double speed, long durationMs) {
+            this.frame = frame;
+            this.fps = fps;
+            this.timeMs = timeMs;
+            this.speed = speed;
+            this.durationMs = durationMs;
+        }
+
+        public long getFrame() {
+            return frame;
+        }
+
+        public double getFps() {
+            return fps;
+        }
+
+        public long getTimeMs() {
+            return timeMs;
+        }
+
+        public double getSpeed() {
+            return speed;
+        }
+
+        // The first input's duration as ffmpeg reported it
+        public long getDurationMs() {
+            return durationMs;
+        }
+
+        // Fraction of totalMs encoded so far, or -1 if either time is unknown
+        public double getFraction(long totalMs) {
+            if (timeMs < 0 || totalMs <= 0) {
+                return -1;
+            }
+            return Math.min(1.0, (double) timeMs / totalMs);
+        }
+    }
+
+    public interface ProgressListener {
+        void onProgress(Progress progress);
     }
 
-    private class ExecuteFFmpegTask extends AsyncTask<Void, String, FFmpegResult> {
-        private String command;
-        private FFmpegCallback callback;
-        private String errorMessage;
+    // Turns ffmpeg's output into Progress and tracks when the encode last moved forward. It
+    // understands both -progress reports (one key=value per line, each report closed by a
+    // progress=continue or progress=end line) and the stats lines ffmpeg prints to stderr.
+    static class ProgressParser {
+        private static final Pattern REPORT_LINE = Pattern.compile("^(\\w+)=(\\S*)$");
+        private static final Pattern DURATION = Pattern.compile("Duration: (\\d+):(\\d+):(\\d+(?:\\.\\d+)?)");
+        private static final Pattern FRAME = Pattern.compile("frame=\\s*(\\d+)");
+        private static final Pattern FPS = Pattern.compile("fps=\\s*([\\d.]+)");
+        private static final Pattern TIME = Pattern.compile("time=\\s*(-?)(\\d+):(\\d+):(\\d+(?:\\.\\d+)?)");
+        private static final Pattern SPEED = Pattern.compile("speed=\\s*([\\d.]+)x");
+
+        private long durationMs = -1;
+        // The -progress report being read
+        private long reportFrame = -1;
+        private double reportFps = -1;
+        private long reportTimeMs = -1;
+        private double reportSpeed = -1;
+        private long lastFrame = -1;
+        private long lastTimeMs = -1;
+        volatile long lastActivityAt = System.currentTimeMillis();
+        volatile boolean stalled = false;
+
+        // Returns null for lines that aren't stats lines
+        Progress parse(String line) {
+            if (durationMs < 0) {
+                Matcher duration = DURATION.matcher(line);
+                if (duration.find()) {
+                    durationMs = toMillis(duration.group(1), duration.group(2), duration.group(3));
+                }
+            }
+
+            Matcher report = REPORT_LINE.matcher(line);
+            if (report.matches()) {
+                return parseReportLine(report.group(1), line);
+            }
+
+            Matcher time = TIME.matcher(line);
+            if (!line.contains("speed=") || !time.find()) {
+                // Log output still shows ffmpeg is alive, e.g. while probing inputs
+                lastActivityAt = System.currentTimeMillis();
+                return null;
+            }
 
-        public ExecuteFFmpegTask(String command, FFmpegCallback callback) {
-            this.command = command;
-            this.callback = callback;
+            return toProgress(parseLong(FRAME, line), parseDouble(FPS, line), parseTime(time), parseDouble(SPEED, line));
         }
-     
-        @Override
-        protected FFmpegResult doInBackground(Void... params) {
+
+        static boolean isReportLine(String line) {
+            return REPORT_LINE.matcher(line).matches();
+        }
+
+        // Collects the keys Progress needs and returns the report once its progress= line arrives
+        private Progress parseReportLine(String key, String line) {
+            if ("frame".equals(key)) {
+                reportFrame = parseLong(FRAME, line);
+            } else if ("fps".equals(key)) {
+                reportFps = parseDouble(FPS, line);
+            } else if ("out_time".equals(key)) {
+                Matcher time = TIME.matcher(line);
+                reportTimeMs = time.find() ? parseTime(time) : -1;
+            } else if ("speed".equals(key)) {
+                reportSpeed = parseDouble(SPEED, line);
+            } else if ("progress".equals(key)) {
+                Progress progress = toProgress(reportFrame, reportFps, reportTimeMs, reportSpeed);
+                reportFrame = -1;
+                reportFps = -1;
+                reportTimeMs = -1;
+                reportSpeed = -1;
+                return progress;
+            }
+            return null;
+        }
+
+        private Progress toProgress(long frame, double fps, long timeMs, double speed) {
+            // Repeated reports without movement don't count as activity
+            if (frame > lastFrame || timeMs > lastTimeMs) {
+                lastActivityAt = System.currentTimeMillis();
+            }
+            lastFrame = Math.max(lastFrame, frame);
+            lastTimeMs = Math.max(lastTimeMs, timeMs);
+
+            return new Progress(frame, fps, timeMs, speed, durationMs);
+        }
+
+        // ffmpeg prints time=-577014:32:22.77 before the first frame is out
+        private static long parseTime(Matcher time) {
+            return time.group(1).isEmpty() ? toMillis(time.group(2), time.group(3), time.group(4)) : -1;
+        }
+
+        private static long toMillis(String hours, String minutes, String seconds) {
+            return (long) ((Long.parseLong(hours) * 3600 + Long.parseLong(minutes) * 60 + Double.parseDouble(seconds)) * 1000);
+        }
+
+        private static long parseLong(Pattern pattern, String line) {
+            Matcher matcher = pattern.matcher(line);
+            return matcher.find() ? Long.parseLong(matcher.group(1)) : -1;
+        }
+
+        private static double parseDouble(Pattern pattern, String line) {
+            Matcher matcher = pattern.matcher(line);
+            if (!matcher.find()) {
+                return -1;
+            }
             try {
-                return FFmpegRunner.this.execute(command); // حدد اسم الكلاس لتفادي لبس execute()
-            } catch (Exception e) {
-                errorMessage = e.getMessage();
-                return null;
+                return Double.parseDouble(matcher.group(1));
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+    }
+
+    // Keeps the last maxLines lines of output, so a long encode doesn't buffer its whole log
+    static class LogTail {
+        private final String[] lines;
+        private int next = 0;
+        private int count = 0;
+        private long dropped = 0;
+
+        LogTail(int maxLines) {
+            this.lines = new String[maxLines];
+        }
+
+        void add(String line) {
+            if (count == lines.length) {
+                dropped++;
+            } else {
+                count++;
             }
+            lines[next] = line;
+            next = (next + 1) % lines.length;
         }
 
         @Override
-        protected void onPostExecute(FFmpegResult result) {
-            if (result != null && callback != null) {
-                callback.onSuccess(result);
-            } else if (callback != null) {
-                callback.onError(errorMessage != null ? errorMessage : "Unknown error");
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            if (dropped > 0) {
+                builder.append("[").append(dropped).append(" earlier lines omitted]\n");
             }
+            int first = (next - count + lines.length) % lines.length;
+            for (int i = 0; i < count; i++) {
+                builder.append(lines[(first + i) % lines.length]).append("\n");
+            }
+            return builder.toString();
         }
     }
+
+    public interface FFmpegCallback {
+        void onSuccess(FFmpegResult result);
+        void onError(String errorMessage);
+    }
 }
@@ -0,0 +1,268 @@
+package com.ai_autocreate.utils;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+// Process-wide gate for ffmpeg processes. Encoders are multi-threaded themselves, so only
+// about one process per two cores runs at a time; the rest wait here instead of fighting
+// over the CPU and slowing every job down. Interactive work (previews, commands typed by
+// the user) always goes first, and batch exports never take the last slot, so a preview
+// doesn't wait behind an export. On devices with two or three cores that budget is a
+// single process, so one extra slot is kept for interactive work alone there. Batch jobs
+// are taken round-robin across projects, so a project with many segments can't starve
+// the others.
+public class FFmpegScheduler {
+    public static final int LANE_INTERACTIVE = 0;
+    public static final int LANE_BATCH = 1;
+
+    private static final String[] LANE_NAMES = {"interactive", "batch"};
+
+    private static FFmpegScheduler instance;
+
+    private final int cores;
+    private final int maxRunning;
+    private final int maxBatchRunning;
+    private final int threadsPerJob;
+
+    private final LinkedList<Ticket> interactiveQueue = new LinkedList<>();
+    // Waiting batch jobs per project; the project at the front is served next
+    private final LinkedHashMap<String, LinkedList<Ticket>> batchQueues = new LinkedHashMap<>();
+    private int running = 0;
+    private int runningBatch = 0;
+
+    // Metrics, per lane
+    private final long[] started = new long[2];
+    private final long[] cancelled = new long[2];
+    private final long[] totalWaitMs = new long[2];
+    private final long[] maxWaitMs = new long[2];
+    private final long[] totalRunMs = new long[2];
+
+    private FFmpegScheduler(int cores) {
+        this.cores = Math.max(1, cores);
+        int cpuSlots = Math.max(1, this.cores / 2);
+        this.maxBatchRunning = Math.max(1, cpuSlots - 1);
+        // Always one slot beyond what batch work may use, even when the cores only budget for one
+        this.maxRunning = Math.max(cpuSlots, maxBatchRunning + 1);
+        // Sized for the budgeted processes; the extra interactive slot briefly shares the cores
+        this.threadsPerJob = Math.max(1, this.cores / cpuSlots);
+    }
+
+    public static synchronized FFmpegScheduler getInstance() {
+        if (instance == null) {
+            instance = new FFmpegScheduler(Runtime.getRuntime().availableProcessors());
+        }
+        return instance;
+    }
+
+    // How many batch processes can run at once; more parallel batch work would only queue
+    public int getMaxBatchRunning() {
+        return maxBatchRunning;
+    }
+
+    // Encoder threads each process should use so that all running processes together fill the cores
+    public int getThreadsPerJob() {
+        return threadsPerJob;
+    }
+
+    // Waits for a slot in the lane. Returns null if the token is cancelled first.
+    public Slot acquire(int lane, String projectId, CancellationToken token) throws InterruptedException {
+        Ticket ticket = new Ticket(lane == LANE_BATCH ? LANE_BATCH : LANE_INTERACTIVE, projectId != null ? projectId : "");
+
+        // Wake the wait below on cancel
+        Runnable wake = new Runnable() {
+            @Override
+            public void run() {
+                synchronized (FFmpegScheduler.this) {
+                    FFmpegScheduler.this.notifyAll();
+                }
+            }
+        };
+        token.register(wake);
+
+        try {
+            synchronized (this) {
+                enqueue(ticket);
+                dispatch();
+
+                try {
+                    while (!ticket.started) {
+                        if (token.isCancelled()) {
+                            remove(ticket);
+                            cancelled[ticket.lane]++;
+                            return null;
+                        }
+                        wait();
+                    }
+                } catch (InterruptedException e) {
+                    if (ticket.started) {
+                        finish(ticket);
+                    } else {
+                        remove(ticket);
+                    }
+                    throw e;
+                }
+            }
+        } finally {
+            token.unregister(wake);
+        }
+
+        return new Slot(ticket);
+    }
+
+    public synchronized JSONObject getStats() {
+        JSONObject stats = new JSONObject();
+        try {
+            stats.put("cores", cores);
+            stats.put("max_running", maxRunning);
+            stats.put("max_batch_running", maxBatchRunning);
+            stats.put("running", running);
+            stats.put("queued", getQueuedCount());
+
+            for (int lane = 0; lane < LANE_NAMES.length; lane++) {
+                JSONObject laneStats = new JSONObject();
+                laneStats.put("started", started[lane]);
+                laneStats.put("cancelled_while_queued", cancelled[lane]);
+                laneStats.put("average_wait_ms", started[lane] > 0 ? totalWaitMs[lane] / started[lane] : 0);
+                laneStats.put("max_wait_ms", maxWaitMs[lane]);
+                laneStats.put("average_run_ms", started[lane] > 0 ? totalRunMs[lane] / started[lane] : 0);
+                stats.put(LANE_NAMES[lane], laneStats);
+            }
+        } catch (JSONException e) {
+            // Ignore
+        }
+        return stats;
+    }
+
+    private void enqueue(Ticket ticket) {
+        if (ticket.lane == LANE_INTERACTIVE) {
+            interactiveQueue.add(ticket);
+            return;
+        }
+
+        LinkedList<Ticket> queue = batchQueues.get(ticket.projectId);
+        if (queue == null) {
+            queue = new LinkedList<>();
+            batchQueues.put(ticket.projectId, queue);
+        }
+        queue.add(ticket);
+    }
+
+    private void remove(Ticket ticket) {
+        if (ticket.lane == LANE_INTERACTIVE) {
+            interactiveQueue.remove(ticket);
+            return;
+        }
+
+        LinkedList<Ticket> queue = batchQueues.get(ticket.projectId);
+        if (queue != null) {
+            queue.remove(ticket);
+            if (queue.isEmpty()) {
+                batchQueues.remove(ticket.projectId);
+            }
+        }
+    }
+
+    // Starts waiting tickets while there are free slots; called with the lock held
+    private void dispatch() {
+        boolean startedAny = false;
+
+        while (running < maxRunning) {
+            Ticket next = interactiveQueue.poll();
+            if (next == null) {
+                if (runningBatch >= maxBatchRunning) {
+                    break;
+                }
+                next = pollBatch();
+                if (next == null) {
+                    break;
+                }
+                runningBatch++;
+            }
+
+            running++;
+            next.started = true;
+            next.startedAt = System.currentTimeMillis();
+
+            long waitMs = next.startedAt - next.queuedAt;
+            started[next.lane]++;
+            totalWaitMs[next.lane] += waitMs;
+            maxWaitMs[next.lane] = Math.max(maxWaitMs[next.lane], waitMs);
+            startedAny = true;
+        }
+
+        if (startedAny) {
+            notifyAll();
+        }
+    }
+
+    // Takes the oldest job of the project at the front, then moves that project to the back
+    private Ticket pollBatch() {
+        Iterator<Map.Entry<String, LinkedList<Ticket>>> entries = batchQueues.entrySet().iterator();
+        if (!entries.hasNext()) {
+            return null;
+        }
+
+        Map.Entry<String, LinkedList<Ticket>> entry = entries.next();
+        LinkedList<Ticket> queue = entry.getValue();
+        Ticket ticket = queue.poll();
+        entries.remove();
+        if (!queue.isEmpty()) {
+            batchQueues.put(entry.getKey(), queue);
+        }
+        return ticket;
+    }
+
+    private int getQueuedCount() {
+        int count = interactiveQueue.size();
+        for (LinkedList<Ticket> queue : batchQueues.values()) {
+            count += queue.size();
+        }
+        return count;
+    }
+
+    private synchronized void finish(Ticket ticket) {
+        running--;
+        if (ticket.lane == LANE_BATCH) {
+            runningBatch--;
+        }
+        totalRunMs[ticket.lane] += System.currentTimeMillis() - ticket.startedAt;
+        dispatch();
+    }
+
+    private static class Ticket {
+        final int lane;
+        final String projectId;
+        final long queuedAt = System.currentTimeMillis();
+        long startedAt;
+        boolean started = false;
+
+        Ticket(int lane, String projectId) {
+            this.lane = lane;
+            this.projectId = projectId;
+        }
+    }
+
+    public class Slot {
+        private final Ticket ticket;
+        private boolean released = false;
+
+        private Slot(Ticket ticket) {
+            this.ticket = ticket;
+        }
+
+        public void release() {
+            synchronized (FFmpegScheduler.this) {
+                if (released) {
+                    return;
+                }
+                released = true;
+                finish(ticket);
+            }
+        }
+    }
+}
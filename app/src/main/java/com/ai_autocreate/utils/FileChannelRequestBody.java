@@ -0,0 +1,94 @@
+package com.ai_autocreate.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+
+// Request body that streams a file from a FileChannel through one direct buffer.
+// The length is known up front, so OkHttp sends a fixed Content-Length and never
+// holds more than a buffer's worth of the file in memory.
+public class FileChannelRequestBody extends RequestBody {
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private final File file;
+    private final MediaType contentType;
+    private final long offset;
+    private final long length;
+    private final ProgressListener listener;
+
+    public interface ProgressListener {
+        void onProgress(long bytesSent, long totalBytes);
+    }
+
+    public FileChannelRequestBody(File file, MediaType contentType, ProgressListener listener) {
+        this(file, contentType, 0, file.length(), listener);
+    }
+
+    // Streams only [offset, offset + length) of the file
+    public FileChannelRequestBody(File file, MediaType contentType, long offset, long length, ProgressListener listener) {
+        this.file = file;
+        this.contentType = contentType;
+        this.offset = offset;
+        this.length = length;
+        this.listener = listener;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return contentType;
+    }
+
+    @Override
+    public long contentLength() {
+        return length;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        FileInputStream input = new FileInputStream(file);
+        FileChannel channel = input.getChannel();
+
+        try {
+            ByteBuffer buffer = ByteBuffer.allocateDirect((int) Math.min(BUFFER_SIZE, Math.max(1, length)));
+            long position = offset;
+            long sent = 0;
+
+            if (listener != null) {
+                listener.onProgress(0, length);
+            }
+
+            while (sent < length) {
+                buffer.clear();
+                if (length - sent < buffer.capacity()) {
+                    buffer.limit((int) (length - sent));
+                }
+
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    throw new IOException("File shrank during upload: " + file.getAbsolutePath());
+                }
+
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    sink.write(buffer);
+                }
+
+                position += read;
+                sent += read;
+
+                if (listener != null) {
+                    listener.onProgress(sent, length);
+                }
+            }
+        } finally {
+            channel.close();
+            input.close();
+        }
+    }
+}
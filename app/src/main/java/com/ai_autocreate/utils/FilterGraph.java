@@ -0,0 +1,119 @@
+package com.ai_autocreate.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// An ffmpeg filtergraph built from chains of filters between labelled pads, e.g.
+//   [0:v]scale=1280:720,format=yuv420p[v];[1:a][2:a]concat=n=2:v=0:a=1[a]
+// Option values are escaped at both levels ffmpeg parses (filter options, then the
+// graph), so paths and text with ':', ',', quotes or brackets are passed through intact.
+public class FilterGraph {
+    private final List<Chain> chains = new ArrayList<>();
+
+    // Starts a chain reading from the given pads: stream specifiers like "0:v" or labels of other chains
+    public Chain chain(String... inputLabels) {
+        Chain chain = new Chain(inputLabels);
+        chains.add(chain);
+        return chain;
+    }
+
+    public boolean isEmpty() {
+        return chains.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder graph = new StringBuilder();
+        for (Chain chain : chains) {
+            if (graph.length() > 0) {
+                graph.append(";");
+            }
+            chain.appendTo(graph);
+        }
+        return graph.toString();
+    }
+
+    public static class Chain {
+        private final String[] inputLabels;
+        private final List<Filter> filters = new ArrayList<>();
+        private String outputLabel;
+
+        private Chain(String[] inputLabels) {
+            this.inputLabels = inputLabels;
+        }
+
+        public Chain filter(Filter filter) {
+            filters.add(filter);
+            return this;
+        }
+
+        // Shortcut for a filter that only takes options
+        public Chain filter(String name) {
+            return filter(new Filter(name));
+        }
+
+        public Chain output(String label) {
+            this.outputLabel = label;
+            return this;
+        }
+
+        private void appendTo(StringBuilder graph) {
+            for (String label : inputLabels) {
+                graph.append("[").append(label).append("]");
+            }
+            for (int i = 0; i < filters.size(); i++) {
+                if (i > 0) {
+                    graph.append(",");
+                }
+                filters.get(i).appendTo(graph);
+            }
+            if (outputLabel != null) {
+                graph.append("[").append(outputLabel).append("]");
+            }
+        }
+    }
+
+    public static class Filter {
+        private final String name;
+        private final List<String> args = new ArrayList<>();
+
+        public Filter(String name) {
+            this.name = name;
+        }
+
+        // A positional argument, e.g. scale's width and height
+        public Filter arg(Object value) {
+            args.add(escape(String.valueOf(value)));
+            return this;
+        }
+
+        public Filter option(String key, Object value) {
+            args.add(key + "=" + escape(String.valueOf(value)));
+            return this;
+        }
+
+        private void appendTo(StringBuilder graph) {
+            graph.append(name);
+            for (int i = 0; i < args.size(); i++) {
+                graph.append(i == 0 ? "=" : ":").append(args.get(i));
+            }
+        }
+
+        // Option level first (\ ' :), then graph level (\ ' [ ] , ;)
+        private static String escape(String value) {
+            return escapeChars(escapeChars(value, "\\':"), "\\'[],;");
+        }
+
+        private static String escapeChars(String value, String special) {
+            StringBuilder escaped = new StringBuilder(value.length());
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (special.indexOf(c) >= 0) {
+                    escaped.append('\\');
+                }
+                escaped.append(c);
+            }
+            return escaped.toString();
+        }
+    }
+}
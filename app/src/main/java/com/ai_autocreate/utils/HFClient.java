@@ -1,7 +1,8 @@
 package com.ai_autocreate.utils;
 
 import android.content.Context;
-import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
 
 import com.ai_autocreate.R;
 
@@ -9,329 +10,1174 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.BufferedReader;
-import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.HttpURLConnection;
-import java.net.URL;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Call;
+import okhttp3.MediaType;
+import okhttp3.MultipartBody;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.BufferedSource;
 
 public class HFClient {
-    private static final int CONNECT_TIMEOUT = 10000; // 10 seconds
-    private static final int READ_TIMEOUT = 30000; // 30 seconds
-    private static final int MAX_RETRIES = 3;
-    private static final int[] RETRY_DELAYS = {1000, 2000, 4000}; // 1s, 2s, 4s
+    private static final MediaType JSON_MEDIA_TYPE = MediaType.parse("application/json; charset=utf-8");
+    private static final MediaType OCTET_STREAM_MEDIA_TYPE = MediaType.parse("application/octet-stream");
+    private static final int MAX_LOGGED_ERROR_LENGTH = 300;
+    private static final int DOWNLOAD_BUFFER_SIZE = 64 * 1024;
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+    private static final int MIN_HEDGE_SAMPLES = 5;
+    private static final long MIN_HEDGE_DELAY_MS = 500;
+    private static final int IO_THREADS = 8;
+
+    private static final ConcurrentHashMap<String, InFlightRequest> inFlightRequests = new ConcurrentHashMap<>();
+    private static final AtomicLong coalescedRequests = new AtomicLong();
+    private static final AtomicLong hedgesLaunched = new AtomicLong();
+    private static final AtomicLong hedgeWins = new AtomicLong();
+    private static ExecutorService hedgeExecutor;
+    private static ExecutorService ioExecutor;
 
     private Context context;
     private JSONLogger logger;
+    private HttpTransport transport;
+    private ResponseCache responseCache;
+    private RetryPolicy retryPolicy;
+    private RateLimiter rateLimiter;
+    private ApiKeyPool keyPool;
 
     public HFClient(Context context) {
         this.context = context;
         this.logger = new JSONLogger(context);
+        this.transport = HttpTransport.getInstance();
+        this.responseCache = ResponseCache.getInstance();
+        this.retryPolicy = RetryPolicy.defaultPolicy();
+        this.rateLimiter = RateLimiter.getInstance();
+        this.keyPool = context != null ? ApiKeyPool.getInstance(context) : null;
+    }
+
+    public JSONObject getTransportStats() {
+        return transport.getStats();
+    }
+
+    public JSONObject getCacheStats() {
+        return responseCache.getStats();
+    }
+
+    public JSONObject getRateLimitStats() {
+        return rateLimiter.getStats();
+    }
+
+    public JSONObject getKeyPoolStats() {
+        return keyPool != null ? keyPool.getStats() : new JSONObject();
     }
 
     public JSONObject requestModel(String endpoint, String apiKey, JSONObject payload) {
-        for (int attempt = 0; attempt < MAX_RETRIES; attempt++) {
-            try {
-                JSONObject response = makeRequest(endpoint, apiKey, payload);
-                if (response != null) {
-                    return response;
-                }
+        return requestModel(endpoint, apiKey, payload, new RequestOptions());
+    }
+
+    public JSONObject requestModel(String endpoint, String apiKey, JSONObject payload, RequestOptions options) {
+        // Serve deterministic repeats from the on-disk cache
+        String cacheKey = null;
+        if (!options.isBypassCache() && responseCache.isEnabled()
+            && (options.isDeterministic() || responseCache.isCacheable(payload))) {
+            cacheKey = ResponseCache.keyFor(endpoint, payload);
+            JSONObject cached = responseCache.get(cacheKey);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        JSONObject response = options.isHedged()
+            ? requestModelHedged(endpoint, apiKey, payload, options)
+            : requestModelCoalesced(endpoint, apiKey, payload, options.getDeadlineMs(), options.getCancellationToken());
+
+        if (response != null && cacheKey != null) {
+            responseCache.put(cacheKey, endpoint, response);
+        }
+
+        return response;
+    }
 
-                // If this is not the last attempt, wait before retrying
-                if (attempt < MAX_RETRIES - 1) {
-                    Thread.sleep(RETRY_DELAYS[attempt]);
+    // Lets single-input requests from concurrent callers share one {"inputs": [...]} call.
+    // The answer has the same shape as requestModel's; unbatchable payloads go out as they are.
+    public JSONObject requestModelBatched(String endpoint, String apiKey, JSONObject payload) {
+        return requestModelBatched(endpoint, apiKey, payload, new RequestOptions());
+    }
+
+    // Cancelling the options' token returns this caller right away; the shared call goes on for the others
+    public JSONObject requestModelBatched(String endpoint, String apiKey, JSONObject payload, RequestOptions options) {
+        return RequestBatcher.getInstance().submit(this, endpoint, apiKey, payload, options);
+    }
+
+    public static long getCoalescedRequestCount() {
+        return coalescedRequests.get();
+    }
+
+    // Identical concurrent requests share one network call; the first caller performs it
+    // and everyone else waits for its result
+    private JSONObject requestModelCoalesced(String endpoint, String apiKey, JSONObject payload, long deadlineMs,
+                                             CancellationToken token) {
+        String flightKey = ResponseCache.keyFor(endpoint + "\n" + (apiKey != null ? apiKey : ""), payload);
+        InFlightRequest flight = new InFlightRequest();
+        InFlightRequest existing = inFlightRequests.putIfAbsent(flightKey, flight);
+
+        if (existing != null) {
+            coalescedRequests.incrementAndGet();
+            try {
+                // A cancelled follower stops waiting; the leader's call carries on for the others
+                JSONObject shared = existing.await(deadlineMs, token);
+                if (shared == null && existing.isLeaderCancelled() && !token.isCancelled()) {
+                    // The leader gave up for its own reasons, not ours; make the call ourselves
+                    return requestModelWithRetries(endpoint, apiKey, payload, deadlineMs, token);
                 }
+                // Hand each caller its own copy, JSONObject is mutable
+                return shared != null ? new JSONObject(shared.toString()) : null;
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
                 return null;
-            } catch (Exception e) {
-                logger.log("HFClient", "Error in request attempt " + (attempt + 1) + ": " + e.getMessage());
-
-                // If this is not the last attempt, wait before retrying
-                if (attempt < MAX_RETRIES - 1) {
-                    try {
-                        Thread.sleep(RETRY_DELAYS[attempt]);
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                        return null;
-                    }
-                }
+            } catch (JSONException e) {
+                return null;
             }
         }
 
-        logger.log("HFClient", "All request attempts failed for endpoint: " + endpoint);
-        return null;
+        JSONObject response = null;
+        try {
+            response = requestModelWithRetries(endpoint, apiKey, payload, deadlineMs, token);
+            return response;
+        } finally {
+            inFlightRequests.remove(flightKey, flight);
+            flight.complete(response, token.isCancelled());
+        }
     }
 
-    private JSONObject makeRequest(String endpoint, String apiKey, JSONObject payload) {
-        HttpURLConnection connection = null;
-        BufferedReader reader = null;
+    private JSONObject requestModelWithRetries(final String endpoint, final String apiKey, final JSONObject payload,
+                                               long deadlineMs, final CancellationToken token) {
+        return executeWithRetries("request", endpoint, apiKey, deadlineMs, token, new Attempt() {
+                @Override
+                public CallResult execute(String attemptKey) {
+                    return makeRequest(endpoint, attemptKey, payload, token);
+                }
+            });
+    }
 
+    public static JSONObject getHedgeStats() {
+        JSONObject stats = new JSONObject();
         try {
-            URL url = new URL(endpoint);
-            connection = (HttpURLConnection) url.openConnection();
-            connection.setRequestMethod("POST");
-            connection.setConnectTimeout(CONNECT_TIMEOUT);
-            connection.setReadTimeout(READ_TIMEOUT);
-            connection.setRequestProperty("Content-Type", "application/json");
-            connection.setRequestProperty("Accept", "application/json");
+            stats.put("hedges_launched", hedgesLaunched.get());
+            stats.put("hedge_wins", hedgeWins.get());
+        } catch (JSONException e) {
+            // Ignore
+        }
+        return stats;
+    }
 
-            // Add API key if provided
-            if (apiKey != null && !apiKey.isEmpty()) {
-                connection.setRequestProperty("Authorization", "Bearer " + apiKey);
-            }
+    // Sends the request to the primary endpoint and, if it hasn't answered by its observed p90
+    // latency, the same request to the healthiest equivalent model of the same type. The first
+    // successful answer wins and the other call is cancelled. Without latency history or an
+    // equivalent model this is a plain request.
+    private JSONObject requestModelHedged(String endpoint, String apiKey, JSONObject payload, RequestOptions options) {
+        CancellationToken parentToken = options.getCancellationToken();
+        long deadlineMs = options.getDeadlineMs();
+        long hedgeDelay = getHedgeDelay(endpoint);
+        String alternate = hedgeDelay >= 0 ? findHedgeEndpoint(endpoint) : null;
 
-            // Send request
-            connection.setDoOutput(true);
-            DataOutputStream outputStream = new DataOutputStream(connection.getOutputStream());
-            outputStream.writeBytes(payload.toString());
-            outputStream.flush();
-            outputStream.close();
+        if (alternate == null) {
+            return requestModelCoalesced(endpoint, apiKey, payload, deadlineMs, parentToken);
+        }
+
+        long deadline = System.currentTimeMillis() + deadlineMs;
+        CancellationToken primaryToken = parentToken.createChild();
+        CancellationToken hedgeToken = parentToken.createChild();
+        ExecutorCompletionService<JSONObject> completionService = new ExecutorCompletionService<>(getHedgeExecutor());
+
+        try {
+            Future<JSONObject> primary = completionService.submit(
+                createHedgeCallable(endpoint, apiKey, payload, deadlineMs, primaryToken));
 
-            // Get response
-            int responseCode = connection.getResponseCode();
+            Future<JSONObject> finished = completionService.poll(hedgeDelay, TimeUnit.MILLISECONDS);
+            if (finished != null) {
+                return finished.get();
+            }
 
-            if (responseCode == HttpURLConnection.HTTP_OK) {
-                reader = new BufferedReader(new InputStreamReader(connection.getInputStream()));
-                StringBuilder response = new StringBuilder();
-                String line;
+            hedgesLaunched.incrementAndGet();
+            logger.log("HFClient", "No answer from " + endpoint + " after " + hedgeDelay + "ms, hedging to " + alternate);
+            Future<JSONObject> hedge = completionService.submit(
+                createHedgeCallable(alternate, apiKey, payload, deadline - System.currentTimeMillis(), hedgeToken));
 
-                while ((line = reader.readLine()) != null) {
-                    response.append(line);
+            for (int pending = 2; pending > 0; pending--) {
+                long remaining = deadline - System.currentTimeMillis();
+                finished = remaining > 0 ? completionService.poll(remaining, TimeUnit.MILLISECONDS) : null;
+                if (finished == null) {
+                    return null;
                 }
 
-                // Parse JSON response
-                return new JSONObject(response.toString());
-            } else {
-                logger.log("HFClient", "HTTP error: " + responseCode + " for endpoint: " + endpoint);
-                return null;
+                JSONObject response = finished.get();
+                if (response != null) {
+                    if (finished == hedge) {
+                        hedgeWins.incrementAndGet();
+                    }
+                    return response;
+                }
             }
+            return null;
 
-        } catch (Exception e) {
-            logger.log("HFClient", "Error making request: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
             return null;
         } finally {
-            // Clean up
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (IOException e) {
-                    // Ignore
-                }
+            // Stops the loser and detaches both children from the caller's token
+            primaryToken.cancel();
+            hedgeToken.cancel();
+        }
+    }
+
+    private Callable<JSONObject> createHedgeCallable(final String endpoint, final String apiKey, final JSONObject payload,
+                                                     final long deadlineMs, final CancellationToken token) {
+        return new Callable<JSONObject>() {
+            @Override
+            public JSONObject call() {
+                // Hedged calls are not coalesced; a cancelled loser must not fail other callers
+                return requestModelWithRetries(endpoint, apiKey, payload, deadlineMs, token);
             }
+        };
+    }
 
-            if (connection != null) {
-                connection.disconnect();
+    // p90 of the endpoint's recent latencies, or -1 until there is enough history to trust it
+    private long getHedgeDelay(String endpoint) {
+        EndpointHealth health = EndpointHealth.peek(endpoint);
+        if (health == null || health.getSampleCount() < MIN_HEDGE_SAMPLES) {
+            return -1;
+        }
+        return Math.max(MIN_HEDGE_DELAY_MS, health.getLatencyPercentile(0.9));
+    }
+
+    // Healthiest other model that can take the very same payload: configured for exactly its
+    // endpoint (not a base URL prefix), with the same type and task, at the same provider.
+    // Without a "task" on both models nothing is hedged, since e.g. speech recognition and
+    // music generation are both "audio".
+    private String findHedgeEndpoint(String endpoint) {
+        JSONObject primaryModel = ModelsConfig.getInstance().findModelByExactEndpoint(endpoint);
+        if (primaryModel == null || endpoint.endsWith("/")) {
+            return null;
+        }
+
+        String task = primaryModel.optString("task", "");
+        String provider = ApiKeyPool.getProviderForEndpoint(endpoint);
+        if (task.isEmpty()) {
+            return null;
+        }
+
+        String best = null;
+        double bestScore = 0;
+        for (JSONObject model : ModelsConfig.getInstance().getModelsByType(primaryModel.optString("type", ""))) {
+            String candidate = model.optString("endpoint", "");
+            if (candidate.isEmpty() || candidate.endsWith("/") || candidate.equals(endpoint)
+                || "invalid".equals(model.optString("status"))
+                || !task.equals(model.optString("task", ""))
+                || !provider.equals(ApiKeyPool.getProviderForEndpoint(candidate))) {
+                continue;
+            }
+
+            EndpointHealth health = EndpointHealth.peek(candidate);
+            double score = health != null ? health.getHealthScore() : 1.0;
+            if (score > bestScore) {
+                best = candidate;
+                bestScore = score;
             }
         }
+        return best;
     }
 
-    public JSONObject uploadFile(String endpoint, String apiKey, File file, String fieldName) {
-        for (int attempt = 0; attempt < MAX_RETRIES; attempt++) {
+    private static synchronized ExecutorService getHedgeExecutor() {
+        if (hedgeExecutor == null) {
+            hedgeExecutor = Executors.newCachedThreadPool(new ParallelRunner.NamedThreadFactory("hedge"));
+        }
+        return hedgeExecutor;
+    }
+
+    // Runs attempts until one succeeds, the failure is not retryable, the attempt budget is spent,
+    // or the next wait would cross the deadline. Waits follow the server's estimated_time/Retry-After
+    // hints when present, otherwise jittered exponential backoff. Every attempt first takes a
+    // rate limiter permit for the key and endpoint, giving up if none is available in time.
+    // Callers that pass no key get a pooled one per attempt, so a retry can move to another key.
+    private JSONObject executeWithRetries(String operation, String endpoint, String apiKey, long deadlineMs,
+                                          CancellationToken token, Attempt attempt) {
+        long deadline = System.currentTimeMillis() + deadlineMs;
+        EndpointHealth health = EndpointHealth.forEndpoint(endpoint);
+
+        for (int attemptIndex = 0; attemptIndex < retryPolicy.getMaxAttempts(); attemptIndex++) {
+            if (token.isCancelled()) {
+                return null;
+            }
+
+            // Fail fast while the endpoint's circuit is open instead of queueing more doomed calls
+            if (!health.allowRequest()) {
+                logger.log("HFClient", "Circuit " + health.getState() + ", skipping " + operation + " for endpoint: " + endpoint);
+                return null;
+            }
+
+            ApiKeyPool.Lease lease;
             try {
-                JSONObject response = makeFileUploadRequest(endpoint, apiKey, file, fieldName);
-                if (response != null) {
-                    return response;
-                }
+                lease = acquirePooledKey(apiKey, endpoint, deadline, token);
+            } catch (InterruptedException e) {
+                health.releaseTrial();
+                Thread.currentThread().interrupt();
+                return null;
+            }
 
-                // If this is not the last attempt, wait before retrying
-                if (attempt < MAX_RETRIES - 1) {
-                    Thread.sleep(RETRY_DELAYS[attempt]);
+            // Saved keys that are all rejected or cooling past the deadline; don't go out without one
+            if (lease == null && usesKeyPool(apiKey) && keyPool.hasKeysFor(endpoint)) {
+                health.releaseTrial();
+                if (!token.isCancelled()) {
+                    logger.log("HFClient", "No usable API key before deadline for " + operation + " to endpoint: " + endpoint);
                 }
+                return null;
+            }
+            String attemptKey = lease != null ? lease.getKey() : apiKey;
+
+            RateLimiter.Permit permit;
+            try {
+                permit = rateLimiter.acquire(attemptKey, endpoint, deadline, token);
             } catch (InterruptedException e) {
+                releasePooledKey(lease, 0, RetryPolicy.NO_HINT);
+                health.releaseTrial();
                 Thread.currentThread().interrupt();
                 return null;
-            } catch (Exception e) {
-                logger.log("HFClient", "Error in file upload attempt " + (attempt + 1) + ": " + e.getMessage());
-
-                // If this is not the last attempt, wait before retrying
-                if (attempt < MAX_RETRIES - 1) {
-                    try {
-                        Thread.sleep(RETRY_DELAYS[attempt]);
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                        return null;
-                    }
+            }
+
+            if (permit == null) {
+                releasePooledKey(lease, 0, RetryPolicy.NO_HINT);
+                health.releaseTrial();
+                if (!token.isCancelled()) {
+                    logger.log("HFClient", "Rate limit budget exhausted before deadline for " + operation + " to endpoint: " + endpoint);
                 }
+                return null;
+            }
+
+            long startTime = System.currentTimeMillis();
+            CallResult result = null;
+            try {
+                result = attempt.execute(attemptKey);
+            } finally {
+                permit.release();
+                releasePooledKey(lease, result != null ? result.statusCode : 0, result != null ? result.retryAfterMs : RetryPolicy.NO_HINT);
+            }
+            if (token.isCancelled()) {
+                // Our own abort says nothing about the endpoint
+                health.releaseTrial();
+                return null;
+            }
+            recordOutcome(health, result.statusCode, result.retryAfterMs, System.currentTimeMillis() - startTime);
+
+            if (result.statusCode == HTTP_TOO_MANY_REQUESTS) {
+                rateLimiter.onRateLimited(attemptKey, endpoint, result.retryAfterMs);
+            }
+
+            if (result.isSuccess()) {
+                return result.response;
+            }
+
+            if (!retryPolicy.isRetryable(result.statusCode)) {
+                logger.log("HFClient", "Non-retryable " + operation + " failure (HTTP " + result.statusCode + ") for endpoint: " + endpoint);
+                return null;
+            }
+
+            if (attemptIndex == retryPolicy.getMaxAttempts() - 1) {
+                break;
+            }
+
+            long delay = retryPolicy.computeDelay(attemptIndex, result.retryAfterMs);
+            if (System.currentTimeMillis() + delay > deadline) {
+                logger.log("HFClient", "Deadline reached before " + operation + " retry " + (attemptIndex + 2) + " for endpoint: " + endpoint);
+                return null;
+            }
+
+            try {
+                if (!token.sleep(delay)) {
+                    return null;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
             }
         }
 
-        logger.log("HFClient", "All file upload attempts failed for endpoint: " + endpoint);
+        logger.log("HFClient", "All " + operation + " attempts failed for endpoint: " + endpoint);
         return null;
     }
 
-    private JSONObject makeFileUploadRequest(String endpoint, String apiKey, File file, String fieldName) {
-        HttpURLConnection connection = null;
-        BufferedReader reader = null;
-        DataOutputStream outputStream = null;
+    // Agents pass "" to mean "any key"; those calls are spread over the saved keys
+    private boolean usesKeyPool(String apiKey) {
+        return (apiKey == null || apiKey.isEmpty()) && keyPool != null;
+    }
+
+    // Null when the caller brought its own key, or no saved key is usable by the deadline
+    private ApiKeyPool.Lease acquirePooledKey(String apiKey, String endpoint, long deadline,
+                                              CancellationToken token) throws InterruptedException {
+        if (!usesKeyPool(apiKey)) {
+            return null;
+        }
+        return keyPool.acquire(endpoint, deadline, token);
+    }
+
+    private void releasePooledKey(ApiKeyPool.Lease lease, int statusCode, long retryAfterMs) {
+        if (lease != null) {
+            lease.release(statusCode, retryAfterMs);
+        }
+    }
+
+    public static JSONObject getEndpointHealth(String endpoint) {
+        EndpointHealth health = EndpointHealth.peek(endpoint);
+        return health != null ? health.toJSON() : null;
+    }
+
+    // Only outcomes that say something about the endpoint itself move its circuit:
+    // rate limiting, a model that reports it is still loading and bad requests do not
+    private void recordOutcome(EndpointHealth health, int statusCode, long retryAfterMs, long latencyMs) {
+        if (statusCode == HttpURLConnection.HTTP_OK) {
+            health.recordSuccess(latencyMs);
+        } else if (statusCode == 0
+                   || statusCode == HttpURLConnection.HTTP_CLIENT_TIMEOUT
+                   || statusCode == HttpURLConnection.HTTP_NOT_FOUND
+                   || statusCode == HttpURLConnection.HTTP_GONE
+                   || (statusCode >= 500 && retryAfterMs == RetryPolicy.NO_HINT)) {
+            health.recordFailure(latencyMs);
+        } else {
+            health.releaseTrial();
+        }
+    }
+
+    private CallResult makeRequest(String endpoint, String apiKey, JSONObject payload, CancellationToken token) {
+        Response response = null;
+        Runnable cancelCall = null;
 
         try {
-            String boundary = "----WebKitFormBoundary" + System.currentTimeMillis();
-            URL url = new URL(endpoint);
-            connection = (HttpURLConnection) url.openConnection();
-            connection.setRequestMethod("POST");
-            connection.setConnectTimeout(CONNECT_TIMEOUT);
-            connection.setReadTimeout(READ_TIMEOUT);
-            connection.setRequestProperty("Content-Type", "multipart/form-data; boundary=" + boundary);
-            connection.setRequestProperty("Accept", "application/json");
+            Request.Builder builder = new Request.Builder()
+                .url(endpoint)
+                .header("Accept", "application/json")
+                .post(RequestBody.create(JSON_MEDIA_TYPE, payload.toString()));
 
             // Add API key if provided
             if (apiKey != null && !apiKey.isEmpty()) {
-                connection.setRequestProperty("Authorization", "Bearer " + apiKey);
+                builder.header("Authorization", "Bearer " + apiKey);
             }
 
-            // Send request
-            connection.setDoOutput(true);
-            outputStream = new DataOutputStream(connection.getOutputStream());
+            // Send request over the shared, pooled connection; cancelling the token aborts it mid-flight
+            Call call = transport.getClient().newCall(builder.build());
+            cancelCall = HttpTransport.cancelOnToken(call, token);
+
+            response = call.execute();
+            return readCallResult(response, endpoint);
+
+        } catch (Exception e) {
+            if (!token.isCancelled()) {
+                logger.log("HFClient", "Error making request: " + e.getMessage());
+            }
+            return CallResult.networkError();
+        } finally {
+            if (cancelCall != null) {
+                token.unregister(cancelCall);
+            }
+            // Closing the body returns the connection to the pool for reuse
+            if (response != null) {
+                response.close();
+            }
+        }
+    }
 
-            // Add file part
-            outputStream.writeBytes("--" + boundary + "\r\n");
-            outputStream.writeBytes("Content-Disposition: form-data; name=\"" + fieldName + "\"; filename=\"" + file.getName() + "\"\r\n");
-            outputStream.writeBytes("Content-Type: application/octet-stream\r\n\r\n");
+    // Inference endpoints answer with a JSON array for most tasks; callers read it as "0"
+    private static JSONObject parseResponseBody(String body) throws JSONException {
+        String trimmed = body.trim();
+        if (trimmed.startsWith("[")) {
+            return new JSONObject().put("0", new JSONArray(trimmed));
+        }
+        return new JSONObject(trimmed);
+    }
 
-            // Write file content
-            FileInputStream fileInputStream = new FileInputStream(file);
-            byte[] buffer = new byte[4096];
-            int bytesRead;
+    private CallResult readCallResult(Response response, String endpoint) throws Exception {
+        int code = response.code();
 
-            while ((bytesRead = fileInputStream.read(buffer)) != -1) {
-                outputStream.write(buffer, 0, bytesRead);
+        if (code == HttpURLConnection.HTTP_OK) {
+            // Parse JSON response; a malformed body will not get better by retrying
+            try {
+                return CallResult.success(parseResponseBody(response.body().string()));
+            } catch (JSONException e) {
+                logger.log("HFClient", "Invalid JSON response from endpoint: " + endpoint);
+                return CallResult.httpError(code, RetryPolicy.NO_HINT);
             }
+        }
 
-            fileInputStream.close();
-            outputStream.writeBytes("\r\n");
-            outputStream.writeBytes("--" + boundary + "--\r\n");
-            outputStream.flush();
+        // Keep the error body; a loading model reports how long it needs
+        String errorBody = response.body() != null ? response.body().string() : "";
+        long retryAfter = RetryPolicy.parseRetryAfter(response.header("Retry-After"));
+        if (retryAfter == RetryPolicy.NO_HINT && code == HttpURLConnection.HTTP_UNAVAILABLE) {
+            retryAfter = RetryPolicy.parseEstimatedTime(errorBody);
+        }
 
-            // Get response
-            int responseCode = connection.getResponseCode();
+        if (errorBody.length() > MAX_LOGGED_ERROR_LENGTH) {
+            errorBody = errorBody.substring(0, MAX_LOGGED_ERROR_LENGTH) + "...";
+        }
+        logger.log("HFClient", "HTTP error: " + code + " for endpoint: " + endpoint
+                   + (errorBody.isEmpty() ? "" : " (" + errorBody + ")"));
+        return CallResult.httpError(code, retryAfter);
+    }
 
-            if (responseCode == HttpURLConnection.HTTP_OK) {
-                reader = new BufferedReader(new InputStreamReader(connection.getInputStream()));
-                StringBuilder response = new StringBuilder();
-                String line;
+    // Requests a token stream from a text model and hands each chunk to the listener as it arrives.
+    // Endpoints that don't stream answer with plain JSON, which is delivered as a single chunk.
+    // The return value has the same shape as requestModel so callers can parse it the same way.
+    public JSONObject requestModelStream(String endpoint, String apiKey, JSONObject payload, StreamListener listener) {
+        return requestModelStream(endpoint, apiKey, payload, listener, CancellationToken.NONE);
+    }
 
-                while ((line = reader.readLine()) != null) {
-                    response.append(line);
-                }
+    public JSONObject requestModelStream(String endpoint, String apiKey, JSONObject payload, StreamListener listener,
+                                         CancellationToken token) {
+        if (token.isCancelled()) {
+            return null;
+        }
 
-                // Parse JSON response
-                return new JSONObject(response.toString());
-            } else {
-                logger.log("HFClient", "HTTP error: " + responseCode + " for file upload to endpoint: " + endpoint);
+        EndpointHealth health = EndpointHealth.forEndpoint(endpoint);
+        if (!health.allowRequest()) {
+            logger.log("HFClient", "Circuit " + health.getState() + ", skipping streaming request for endpoint: " + endpoint);
+            return null;
+        }
+
+        long deadline = System.currentTimeMillis() + RetryPolicy.DEFAULT_DEADLINE_MS;
+        ApiKeyPool.Lease lease;
+        try {
+            lease = acquirePooledKey(apiKey, endpoint, deadline, token);
+        } catch (InterruptedException e) {
+            health.releaseTrial();
+            Thread.currentThread().interrupt();
+            return null;
+        }
+
+        if (lease == null && usesKeyPool(apiKey) && keyPool.hasKeysFor(endpoint)) {
+            health.releaseTrial();
+            if (!token.isCancelled()) {
+                logger.log("HFClient", "No usable API key for streaming request to endpoint: " + endpoint);
+            }
+            return null;
+        }
+        String streamKey = lease != null ? lease.getKey() : apiKey;
+
+        // The permit is held for the whole stream, it occupies a concurrency slot until the end
+        RateLimiter.Permit permit;
+        try {
+            permit = rateLimiter.acquire(streamKey, endpoint, deadline, token);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            permit = null;
+        }
+
+        if (permit == null) {
+            releasePooledKey(lease, 0, RetryPolicy.NO_HINT);
+            health.releaseTrial();
+            if (!token.isCancelled()) {
+                logger.log("HFClient", "No rate limit permit for streaming request to endpoint: " + endpoint);
+            }
+            return null;
+        }
+
+        Response response = null;
+        Runnable cancelCall = null;
+        long startTime = System.currentTimeMillis();
+        int statusCode = 0;
+
+        try {
+            JSONObject streamPayload = new JSONObject(payload.toString());
+            streamPayload.put("stream", true);
+
+            Request.Builder builder = new Request.Builder()
+                .url(endpoint)
+                .header("Accept", "text/event-stream, application/json")
+                .post(RequestBody.create(JSON_MEDIA_TYPE, streamPayload.toString()));
+
+            // Add API key if provided
+            if (streamKey != null && !streamKey.isEmpty()) {
+                builder.header("Authorization", "Bearer " + streamKey);
+            }
+
+            // Cancelling closes the stream, which ends the read loop below
+            Call call = transport.getClient().newCall(builder.build());
+            cancelCall = HttpTransport.cancelOnToken(call, token);
+
+            response = call.execute();
+            statusCode = response.code();
+
+            if (response.code() != HttpURLConnection.HTTP_OK) {
+                logger.log("HFClient", "HTTP error: " + response.code() + " for streaming endpoint: " + endpoint);
                 return null;
             }
 
+            String contentType = response.header("Content-Type", "");
+            if (!contentType.startsWith("text/event-stream")) {
+                // Model does not stream; deliver the whole text at once
+                JSONObject json = parseResponseBody(response.body().string());
+                String text = extractGeneratedText(json);
+                if (text != null && listener != null) {
+                    listener.onText(text);
+                }
+                return json;
+            }
+
+            // Read server-sent events line by line
+            StringBuilder generatedText = new StringBuilder();
+            BufferedSource source = response.body().source();
+            String line;
+
+            while ((line = source.readUtf8Line()) != null) {
+                if (!line.startsWith("data:")) {
+                    continue;
+                }
+
+                String data = line.substring(5).trim();
+                if (data.isEmpty() || "[DONE]".equals(data)) {
+                    continue;
+                }
+
+                JSONObject event = new JSONObject(data);
+                JSONObject eventToken = event.optJSONObject("token");
+                if (eventToken == null || eventToken.optBoolean("special", false)) {
+                    continue;
+                }
+
+                String text = eventToken.optString("text", "");
+                if (!text.isEmpty()) {
+                    generatedText.append(text);
+                    if (listener != null) {
+                        listener.onText(text);
+                    }
+                }
+            }
+
+            // Wrap the streamed text in the non-streaming response shape
+            JSONArray generated = new JSONArray();
+            generated.put(new JSONObject().put("generated_text", generatedText.toString()));
+            return new JSONObject().put("0", generated);
+
         } catch (Exception e) {
-            logger.log("HFClient", "Error making file upload request: " + e.getMessage());
+            if (!token.isCancelled()) {
+                logger.log("HFClient", "Error making streaming request: " + e.getMessage());
+            }
+            // A stream that breaks halfway is a transport failure even after a 200
+            statusCode = 0;
             return null;
         } finally {
-            // Clean up
-            if (outputStream != null) {
-                try {
-                    outputStream.close();
-                } catch (IOException e) {
-                    // Ignore
+            if (cancelCall != null) {
+                token.unregister(cancelCall);
+            }
+            permit.release();
+            releasePooledKey(lease, statusCode, RetryPolicy.NO_HINT);
+            if (token.isCancelled()) {
+                // We hung up; that says nothing about the endpoint
+                health.releaseTrial();
+            } else {
+                recordOutcome(health, statusCode, RetryPolicy.NO_HINT, System.currentTimeMillis() - startTime);
+            }
+            if (statusCode == HTTP_TOO_MANY_REQUESTS) {
+                rateLimiter.onRateLimited(streamKey, endpoint, RetryPolicy.NO_HINT);
+            }
+            if (response != null) {
+                response.close();
+            }
+        }
+    }
+
+    private String extractGeneratedText(JSONObject response) {
+        JSONArray generated = response.optJSONArray("0");
+        if (generated != null && generated.length() > 0) {
+            JSONObject first = generated.optJSONObject(0);
+            if (first != null && first.has("generated_text")) {
+                return first.optString("generated_text", "");
+            }
+        }
+        return response.has("generated_text") ? response.optString("generated_text", "") : null;
+    }
+
+    // Requests media from an image/audio model and streams the raw bytes straight to disk.
+    // The file extension is chosen from the response Content-Type and appended to targetBase.
+    // Returns {"binary": true, "path", "content_type", "size"} for media, or
+    // {"binary": false, "response": ...} when the model answers with JSON instead.
+    public JSONObject requestToFile(String endpoint, String apiKey, JSONObject payload, File targetBase) {
+        return requestToFile(endpoint, apiKey, payload, targetBase, CancellationToken.NONE);
+    }
+
+    public JSONObject requestToFile(final String endpoint, final String apiKey, final JSONObject payload, final File targetBase,
+                                    final CancellationToken token) {
+        return executeWithRetries("download", endpoint, apiKey, RetryPolicy.DEFAULT_DEADLINE_MS, token, new Attempt() {
+                @Override
+                public CallResult execute(String attemptKey) {
+                    return makeDownloadRequest(endpoint, attemptKey, payload, targetBase, token);
                 }
+            });
+    }
+
+    private CallResult makeDownloadRequest(String endpoint, String apiKey, JSONObject payload, File targetBase,
+                                           CancellationToken token) {
+        Response response = null;
+        Runnable cancelCall = null;
+
+        try {
+            Request.Builder builder = new Request.Builder()
+                .url(endpoint)
+                .header("Accept", "image/*, audio/*, application/json")
+                .post(RequestBody.create(JSON_MEDIA_TYPE, payload.toString()));
+
+            // Add API key if provided
+            if (apiKey != null && !apiKey.isEmpty()) {
+                builder.header("Authorization", "Bearer " + apiKey);
             }
 
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (IOException e) {
-                    // Ignore
+            // Cancelling aborts the body copy too; the partial file is removed by writeBodyToFile
+            Call call = transport.getClient().newCall(builder.build());
+            cancelCall = HttpTransport.cancelOnToken(call, token);
+
+            response = call.execute();
+
+            String contentType = response.header("Content-Type", "");
+            if (response.code() != HttpURLConnection.HTTP_OK || contentType.startsWith("application/json")) {
+                CallResult result = readCallResult(response, endpoint);
+                if (!result.isSuccess()) {
+                    return result;
                 }
+                return CallResult.success(new JSONObject()
+                                          .put("binary", false)
+                                          .put("response", result.response));
             }
 
-            if (connection != null) {
-                connection.disconnect();
+            File target = new File(targetBase.getPath() + getExtensionForContentType(contentType));
+            long size = writeBodyToFile(response.body().byteStream(), target);
+
+            return CallResult.success(new JSONObject()
+                                      .put("binary", true)
+                                      .put("path", target.getAbsolutePath())
+                                      .put("content_type", contentType)
+                                      .put("size", size));
+
+        } catch (Exception e) {
+            if (!token.isCancelled()) {
+                logger.log("HFClient", "Error making download request: " + e.getMessage());
+            }
+            return CallResult.networkError();
+        } finally {
+            if (cancelCall != null) {
+                token.unregister(cancelCall);
+            }
+            if (response != null) {
+                response.close();
             }
         }
     }
 
-    public void requestModelAsync(String endpoint, String apiKey, JSONObject payload, RequestCallback callback) {
-        new RequestTask(endpoint, apiKey, payload, callback).execute();
+    // Copies through a fixed-size buffer into a temporary file and renames it into place,
+    // so neither the heap nor the target ever holds a partial payload
+    private long writeBodyToFile(InputStream input, File target) throws IOException {
+        File parent = target.getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+
+        File partFile = new File(target.getPath() + ".part");
+        OutputStream output = new FileOutputStream(partFile);
+        long total = 0;
+
+        try {
+            byte[] buffer = new byte[DOWNLOAD_BUFFER_SIZE];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+                total += read;
+            }
+        } catch (IOException e) {
+            output.close();
+            partFile.delete();
+            throw e;
+        }
+        output.close();
+
+        if (target.exists()) {
+            target.delete();
+        }
+        if (!partFile.renameTo(target)) {
+            partFile.delete();
+            throw new IOException("Could not move download into place: " + target.getAbsolutePath());
+        }
+
+        return total;
     }
 
-    public void uploadFileAsync(String endpoint, String apiKey, File file, String fieldName, RequestCallback callback) {
-        new FileUploadTask(endpoint, apiKey, file, fieldName, callback).execute();
+    private static String getExtensionForContentType(String contentType) {
+        String type = contentType.toLowerCase(Locale.US);
+        int separator = type.indexOf(';');
+        if (separator >= 0) {
+            type = type.substring(0, separator).trim();
+        }
+
+        switch (type) {
+            case "image/png":
+                return ".png";
+            case "image/jpeg":
+            case "image/jpg":
+                return ".jpg";
+            case "image/webp":
+                return ".webp";
+            case "audio/flac":
+            case "audio/x-flac":
+                return ".flac";
+            case "audio/wav":
+            case "audio/x-wav":
+            case "audio/wave":
+                return ".wav";
+            case "audio/mpeg":
+                return ".mp3";
+            case "audio/ogg":
+                return ".ogg";
+            default:
+                return ".bin";
+        }
     }
 
-    public interface RequestCallback {
-        void onSuccess(JSONObject response);
-        void onError(String errorMessage);
+    public JSONObject uploadFile(String endpoint, String apiKey, File file, String fieldName) {
+        return uploadFile(endpoint, apiKey, file, fieldName, null);
     }
 
-    private class RequestTask extends AsyncTask<Void, Void, JSONObject> {
-        private String endpoint;
-        private String apiKey;
-        private JSONObject payload;
-        private RequestCallback callback;
-        private String errorMessage;
+    // Progress restarts from zero if an attempt fails and the upload is retried
+    public JSONObject uploadFile(String endpoint, String apiKey, File file, String fieldName,
+                                 FileChannelRequestBody.ProgressListener progressListener) {
+        return uploadFile(endpoint, apiKey, file, fieldName, progressListener, CancellationToken.NONE);
+    }
 
-        public RequestTask(String endpoint, String apiKey, JSONObject payload, RequestCallback callback) {
-            this.endpoint = endpoint;
-            this.apiKey = apiKey;
-            this.payload = payload;
-            this.callback = callback;
-        }
+    public JSONObject uploadFile(final String endpoint, final String apiKey, final File file, final String fieldName,
+                                 final FileChannelRequestBody.ProgressListener progressListener,
+                                 final CancellationToken token) {
+        return executeWithRetries("file upload", endpoint, apiKey, RetryPolicy.DEFAULT_DEADLINE_MS, token, new Attempt() {
+                @Override
+                public CallResult execute(String attemptKey) {
+                    return makeFileUploadRequest(endpoint, attemptKey, file, fieldName, progressListener, token);
+                }
+            });
+    }
 
-        @Override
-        protected JSONObject doInBackground(Void... params) {
-            try {
-                return requestModel(endpoint, apiKey, payload);
-            } catch (Exception e) {
-                errorMessage = e.getMessage();
-                return null;
+    // Chunked upload that survives retries and app restarts; see ResumableUpload for the protocol
+    public JSONObject uploadFileResumable(String endpoint, String apiKey, File file, String projectId,
+                                          FileChannelRequestBody.ProgressListener progressListener) {
+        return uploadFileResumable(endpoint, apiKey, file, projectId, progressListener, CancellationToken.NONE);
+    }
+
+    // A cancelled upload keeps its session, so calling again later resumes it
+    public JSONObject uploadFileResumable(String endpoint, String apiKey, File file, String projectId,
+                                          FileChannelRequestBody.ProgressListener progressListener,
+                                          CancellationToken token) {
+        return new ResumableUpload(context).upload(endpoint, apiKey, file, projectId, progressListener, token);
+    }
+
+    private CallResult makeFileUploadRequest(String endpoint, String apiKey, File file, String fieldName,
+                                             FileChannelRequestBody.ProgressListener progressListener,
+                                             CancellationToken token) {
+        Response response = null;
+        Runnable cancelCall = null;
+
+        try {
+            // The file part has a known length, so the whole multipart body goes out
+            // with a fixed Content-Length, streamed from disk rather than buffered
+            RequestBody body = new MultipartBody.Builder()
+                .setType(MultipartBody.FORM)
+                .addFormDataPart(fieldName, file.getName(),
+                                 new FileChannelRequestBody(file, OCTET_STREAM_MEDIA_TYPE, progressListener))
+                .build();
+
+            Request.Builder builder = new Request.Builder()
+                .url(endpoint)
+                .header("Accept", "application/json")
+                .post(body);
+
+            // Add API key if provided
+            if (apiKey != null && !apiKey.isEmpty()) {
+                builder.header("Authorization", "Bearer " + apiKey);
             }
-        }
 
-        @Override
-        protected void onPostExecute(JSONObject result) {
-            if (result != null && callback != null) {
-                callback.onSuccess(result);
-            } else if (callback != null) {
-                callback.onError(errorMessage != null ? errorMessage : "Unknown error");
+            // Send request over the shared, pooled connection; cancelling the token aborts the upload
+            Call call = transport.getClient().newCall(builder.build());
+            cancelCall = HttpTransport.cancelOnToken(call, token);
+
+            response = call.execute();
+            return readCallResult(response, endpoint);
+
+        } catch (Exception e) {
+            if (!token.isCancelled()) {
+                logger.log("HFClient", "Error making file upload request: " + e.getMessage());
+            }
+            return CallResult.networkError();
+        } finally {
+            if (cancelCall != null) {
+                token.unregister(cancelCall);
+            }
+            // Closing the body returns the connection to the pool for reuse
+            if (response != null) {
+                response.close();
             }
         }
     }
 
-    private class FileUploadTask extends AsyncTask<Void, Void, JSONObject> {
-        private String endpoint;
-        private String apiKey;
-        private File file;
-        private String fieldName;
-        private RequestCallback callback;
-        private String errorMessage;
+    // Runs on the client's own I/O pool; cancelling the result aborts the call in flight
+    public AsyncResult<JSONObject> requestModelFuture(final String endpoint, final String apiKey, final JSONObject payload,
+                                                      final RequestOptions options) {
+        return AsyncResult.supply(getIoExecutor(), options.getCancellationToken().createChild(),
+            new AsyncResult.Work<JSONObject>() {
+                @Override
+                public JSONObject run(CancellationToken token) throws Exception {
+                    JSONObject response = requestModel(endpoint, apiKey, payload, options.copyWithToken(token));
+                    if (response == null) {
+                        throw new IOException("No response from model: " + endpoint);
+                    }
+                    return response;
+                }
+            });
+    }
+
+    public AsyncResult<JSONObject> requestModelFuture(String endpoint, String apiKey, JSONObject payload) {
+        return requestModelFuture(endpoint, apiKey, payload, new RequestOptions());
+    }
 
-        public FileUploadTask(String endpoint, String apiKey, File file, String fieldName, RequestCallback callback) {
-            this.endpoint = endpoint;
-            this.apiKey = apiKey;
-            this.file = file;
-            this.fieldName = fieldName;
-            this.callback = callback;
+    public AsyncResult<JSONObject> uploadFileFuture(String endpoint, String apiKey, File file, String fieldName,
+                                                    FileChannelRequestBody.ProgressListener progressListener) {
+        return uploadFileFuture(endpoint, apiKey, file, fieldName, progressListener, CancellationToken.NONE);
+    }
+
+    // Cancelling either the caller's token or the result aborts the upload
+    public AsyncResult<JSONObject> uploadFileFuture(final String endpoint, final String apiKey, final File file,
+                                                    final String fieldName,
+                                                    final FileChannelRequestBody.ProgressListener progressListener,
+                                                    CancellationToken cancellationToken) {
+        return AsyncResult.supply(getIoExecutor(), cancellationToken.createChild(),
+            new AsyncResult.Work<JSONObject>() {
+                @Override
+                public JSONObject run(CancellationToken token) throws Exception {
+                    JSONObject response = uploadFile(endpoint, apiKey, file, fieldName, progressListener, token);
+                    if (response == null) {
+                        throw new IOException("Upload failed: " + endpoint);
+                    }
+                    return response;
+                }
+            });
+    }
+
+    public AsyncResult<JSONObject> requestModelAsync(String endpoint, String apiKey, JSONObject payload, RequestCallback callback) {
+        return requestModelFuture(endpoint, apiKey, payload).onMainThread(toResultCallback(callback));
+    }
+
+    public AsyncResult<JSONObject> uploadFileAsync(String endpoint, String apiKey, File file, String fieldName, RequestCallback callback) {
+        return uploadFileFuture(endpoint, apiKey, file, fieldName, null).onMainThread(toResultCallback(callback));
+    }
+
+    // The progress listener is called on the main thread
+    public AsyncResult<JSONObject> uploadFileAsync(String endpoint, String apiKey, File file, String fieldName,
+                                                   FileChannelRequestBody.ProgressListener progressListener,
+                                                   RequestCallback callback) {
+        FileChannelRequestBody.ProgressListener relay = progressListener != null ? new MainThreadProgressRelay(progressListener) : null;
+        return uploadFileFuture(endpoint, apiKey, file, fieldName, relay).onMainThread(toResultCallback(callback));
+    }
+
+    // Sized separately from AsyncTask's serial queue so async model calls overlap
+    public static synchronized ExecutorService getIoExecutor() {
+        if (ioExecutor == null) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(IO_THREADS, IO_THREADS, 30, TimeUnit.SECONDS,
+                                                                 new LinkedBlockingQueue<Runnable>(),
+                                                                 new ParallelRunner.NamedThreadFactory("hf-io"));
+            executor.allowCoreThreadTimeOut(true);
+            ioExecutor = executor;
         }
+        return ioExecutor;
+    }
 
-        @Override
-        protected JSONObject doInBackground(Void... params) {
-            try {
-                return uploadFile(endpoint, apiKey, file, fieldName);
-            } catch (Exception e) {
-                errorMessage = e.getMessage();
-                return null;
+    private static AsyncResult.Callback<JSONObject> toResultCallback(final RequestCallback callback) {
+        return new AsyncResult.Callback<JSONObject>() {
+            @Override
+            public void onSuccess(JSONObject value) {
+                if (callback != null) {
+                    callback.onSuccess(value);
+                }
             }
+
+            @Override
+            public void onError(Exception error) {
+                if (callback != null) {
+                    callback.onError(error != null && error.getMessage() != null ? error.getMessage() : "Unknown error");
+                }
+            }
+        };
+    }
+
+    private interface Attempt {
+        // attemptKey is the caller's key, or the one picked from the key pool for this attempt
+        CallResult execute(String attemptKey);
+    }
+
+    private static class CallResult {
+        final int statusCode; // 0 when no HTTP response was received
+        final JSONObject response;
+        final long retryAfterMs;
+
+        private CallResult(int statusCode, JSONObject response, long retryAfterMs) {
+            this.statusCode = statusCode;
+            this.response = response;
+            this.retryAfterMs = retryAfterMs;
+        }
+
+        static CallResult success(JSONObject response) {
+            return new CallResult(HttpURLConnection.HTTP_OK, response, RetryPolicy.NO_HINT);
+        }
+
+        static CallResult httpError(int statusCode, long retryAfterMs) {
+            return new CallResult(statusCode, null, retryAfterMs);
+        }
+
+        static CallResult networkError() {
+            return new CallResult(0, null, RetryPolicy.NO_HINT);
+        }
+
+        boolean isSuccess() {
+            return response != null;
+        }
+    }
+
+    private static class InFlightRequest {
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile JSONObject response;
+        private volatile boolean leaderCancelled;
+
+        void complete(JSONObject response, boolean leaderCancelled) {
+            this.response = response;
+            this.leaderCancelled = leaderCancelled;
+            done.countDown();
+        }
+
+        boolean isLeaderCancelled() {
+            return leaderCancelled;
+        }
+
+        JSONObject await(long timeoutMs, CancellationToken token) throws InterruptedException {
+            return token.await(done, timeoutMs) ? response : null;
+        }
+    }
+
+    public static class RequestOptions {
+        private boolean bypassCache = false;
+        private boolean deterministic = false;
+        private boolean hedged = false;
+        private long deadlineMs = RetryPolicy.DEFAULT_DEADLINE_MS;
+        private CancellationToken cancellationToken = CancellationToken.NONE;
+
+        public RequestOptions setBypassCache(boolean bypassCache) {
+            this.bypassCache = bypassCache;
+            return this;
+        }
+
+        public boolean isBypassCache() {
+            return bypassCache;
+        }
+
+        // The same payload always gets the same answer (e.g. classification), so it may be cached
+        // even without sampling parameters
+        public RequestOptions setDeterministic(boolean deterministic) {
+            this.deterministic = deterministic;
+            return this;
+        }
+
+        public boolean isDeterministic() {
+            return deterministic;
+        }
+
+        // Total time budget across all attempts and retry waits
+        public RequestOptions setDeadlineMs(long deadlineMs) {
+            this.deadlineMs = deadlineMs;
+            return this;
+        }
+
+        public long getDeadlineMs() {
+            return deadlineMs;
+        }
+
+        // Opt-in: race a slow request against an equivalent model of the same type
+        public RequestOptions setHedged(boolean hedged) {
+            this.hedged = hedged;
+            return this;
+        }
+
+        public boolean isHedged() {
+            return hedged;
+        }
+
+        public RequestOptions setCancellationToken(CancellationToken cancellationToken) {
+            this.cancellationToken = cancellationToken != null ? cancellationToken : CancellationToken.NONE;
+            return this;
+        }
+
+        public CancellationToken getCancellationToken() {
+            return cancellationToken;
+        }
+
+        RequestOptions copyWithToken(CancellationToken token) {
+            return new RequestOptions()
+                .setBypassCache(bypassCache)
+                .setDeterministic(deterministic)
+                .setHedged(hedged)
+                .setDeadlineMs(deadlineMs)
+                .setCancellationToken(token);
+        }
+    }
+
+    public interface StreamListener {
+        void onText(String text);
+    }
+
+    public interface RequestCallback {
+        void onSuccess(JSONObject response);
+        void onError(String errorMessage);
+    }
+
+    // Hops upload progress over to the main thread without flooding it
+    private static class MainThreadProgressRelay implements FileChannelRequestBody.ProgressListener {
+        private static final long MIN_PROGRESS_STEP = 256 * 1024;
+
+        private final FileChannelRequestBody.ProgressListener target;
+        private final Handler handler = new Handler(Looper.getMainLooper());
+        private long lastReported = -MIN_PROGRESS_STEP;
+
+        MainThreadProgressRelay(FileChannelRequestBody.ProgressListener target) {
+            this.target = target;
         }
 
         @Override
-        protected void onPostExecute(JSONObject result) {
-            if (result != null && callback != null) {
-                callback.onSuccess(result);
-            } else if (callback != null) {
-                callback.onError(errorMessage != null ? errorMessage : "Unknown error");
+        public void onProgress(final long bytesSent, final long totalBytes) {
+            if (bytesSent == totalBytes || bytesSent < lastReported || bytesSent - lastReported >= MIN_PROGRESS_STEP) {
+                lastReported = bytesSent;
+                handler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            target.onProgress(bytesSent, totalBytes);
+                        }
+                    });
             }
         }
     }
@@ -0,0 +1,148 @@
+package com.ai_autocreate.utils;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.EventListener;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+public class HttpTransport {
+    public static final int CONNECT_TIMEOUT = 10000; // 10 seconds
+    public static final int READ_TIMEOUT = 30000; // 30 seconds
+    public static final int WRITE_TIMEOUT = 30000; // 30 seconds
+
+    private static final int MAX_IDLE_CONNECTIONS = 8;
+    private static final long KEEP_ALIVE_DURATION_MS = 5 * 60 * 1000; // 5 minutes
+    private static final int MAX_REQUESTS = 32;
+    private static final int MAX_REQUESTS_PER_HOST = 8;
+
+    private static HttpTransport instance;
+
+    private final OkHttpClient client;
+    private final ConnectionPool connectionPool;
+
+    // Reuse metrics
+    private final AtomicLong callCount = new AtomicLong();
+    private final AtomicLong failedCallCount = new AtomicLong();
+    private final AtomicLong connectionsAcquired = new AtomicLong();
+    private final AtomicLong connectionsOpened = new AtomicLong();
+
+    private HttpTransport() {
+        connectionPool = new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_DURATION_MS, TimeUnit.MILLISECONDS);
+
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(MAX_REQUESTS);
+        dispatcher.setMaxRequestsPerHost(MAX_REQUESTS_PER_HOST);
+
+        client = new OkHttpClient.Builder()
+            .connectionPool(connectionPool)
+            .dispatcher(dispatcher)
+            .connectTimeout(CONNECT_TIMEOUT, TimeUnit.MILLISECONDS)
+            .readTimeout(READ_TIMEOUT, TimeUnit.MILLISECONDS)
+            .writeTimeout(WRITE_TIMEOUT, TimeUnit.MILLISECONDS)
+            .retryOnConnectionFailure(true)
+            .eventListener(new MetricsListener())
+            .build();
+    }
+
+    public static synchronized HttpTransport getInstance() {
+        if (instance == null) {
+            instance = new HttpTransport();
+        }
+        return instance;
+    }
+
+    public OkHttpClient getClient() {
+        return client;
+    }
+
+    // Aborts the call, whether connecting, sending or reading the body, when the token is
+    // cancelled. Unregister the returned callback once the response has been closed.
+    public static Runnable cancelOnToken(final Call call, CancellationToken token) {
+        Runnable cancelCall = new Runnable() {
+            @Override
+            public void run() {
+                call.cancel();
+            }
+        };
+        token.register(cancelCall);
+        return cancelCall;
+    }
+
+    public int getIdleConnectionCount() {
+        return connectionPool.idleConnectionCount();
+    }
+
+    public int getConnectionCount() {
+        return connectionPool.connectionCount();
+    }
+
+    public long getReusedConnectionCount() {
+        return Math.max(0, connectionsAcquired.get() - connectionsOpened.get());
+    }
+
+    public JSONObject getStats() {
+        JSONObject stats = new JSONObject();
+
+        try {
+            long acquired = connectionsAcquired.get();
+            long reused = getReusedConnectionCount();
+
+            stats.put("calls", callCount.get());
+            stats.put("failed_calls", failedCallCount.get());
+            stats.put("connections_acquired", acquired);
+            stats.put("connections_opened", connectionsOpened.get());
+            stats.put("connections_reused", reused);
+            stats.put("reuse_ratio", acquired > 0 ? (double) reused / acquired : 0.0);
+            stats.put("pool_connections", getConnectionCount());
+            stats.put("pool_idle_connections", getIdleConnectionCount());
+        } catch (JSONException e) {
+            // Ignore
+        }
+
+        return stats;
+    }
+
+    public void evictIdleConnections() {
+        connectionPool.evictAll();
+    }
+
+    private class MetricsListener extends EventListener {
+        @Override
+        public void callStart(Call call) {
+            callCount.incrementAndGet();
+        }
+
+        @Override
+        public void callFailed(Call call, IOException ioe) {
+            failedCallCount.incrementAndGet();
+        }
+
+        @Override
+        public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+            connectionsOpened.incrementAndGet();
+        }
+
+        @Override
+        public void connectFailed(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol, IOException ioe) {
+            // A failed connect never produced a pooled connection
+            connectionsOpened.decrementAndGet();
+        }
+
+        @Override
+        public void connectionAcquired(Call call, Connection connection) {
+            connectionsAcquired.incrementAndGet();
+        }
+    }
+}
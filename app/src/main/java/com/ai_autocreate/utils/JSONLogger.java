@@ -18,8 +18,13 @@ public class JSONLogger {
     private String logDir;
 
     public JSONLogger(Context context) {
+        this(context, StoragePaths.getAgentResultsDir());
+    }
+
+    // Writes into logDir instead of the shared agent results directory
+    public JSONLogger(Context context, String logDir) {
         this.context = context;
-        this.logDir = StoragePaths.getAgentResultsDir();
+        this.logDir = logDir;
 
         // Ensure log directory exists
         File dir = new File(logDir);
@@ -0,0 +1,302 @@
+package com.ai_autocreate.utils;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+// Durable queue of project generation jobs, kept in job_queue.json in the config directory
+// so queued work survives process death and reboots. Jobs are taken by priority (higher
+// first), then in the order they were queued. The whole queue can be paused, which stops
+// new jobs from being taken; single jobs can be paused and resumed on their own.
+public class JobQueue {
+    public static final String STATUS_QUEUED = "queued";
+    public static final String STATUS_RUNNING = "running";
+    public static final String STATUS_PAUSED = "paused";
+    public static final String STATUS_COMPLETED = "completed";
+    public static final String STATUS_FAILED = "failed";
+    public static final String STATUS_CANCELLED = "cancelled";
+
+    public static final int DEFAULT_PRIORITY = 0;
+    public static final int DEFAULT_WORKERS = 2;
+
+    private static final int MAX_FINISHED_JOBS = 50;
+
+    private static JobQueue instance;
+
+    private final File queueFile;
+    private List<JSONObject> jobs = new ArrayList<>();
+    private boolean paused = false;
+    private long sequence = 0;
+
+    private JobQueue() {
+        this.queueFile = new File(StoragePaths.getConfigDir() + "/job_queue.json");
+        load();
+    }
+
+    public static synchronized JobQueue getInstance() {
+        if (instance == null) {
+            instance = new JobQueue();
+        }
+        return instance;
+    }
+
+    // Worker count from performance_settings.max_concurrent_tasks in app_settings.json
+    public static int getConfiguredWorkers() {
+        File settingsFile = new File(StoragePaths.getConfigDir() + "/app_settings.json");
+        if (!settingsFile.exists()) {
+            return DEFAULT_WORKERS;
+        }
+
+        try {
+            JSONObject settings = new JSONObject(FileUtils.readFromFile(settingsFile));
+            JSONObject performance = settings.optJSONObject("performance_settings");
+            int workers = performance != null ? performance.optInt("max_concurrent_tasks", DEFAULT_WORKERS) : DEFAULT_WORKERS;
+            return Math.max(1, workers);
+        } catch (JSONException e) {
+            return DEFAULT_WORKERS;
+        }
+    }
+
+    // Queues a new job, or puts an existing one for the same project back in the queue
+    public synchronized void enqueue(String projectId, String prompt, int priority) {
+        JSONObject job = find(projectId);
+        try {
+            if (job == null) {
+                job = new JSONObject();
+                job.put("project_id", projectId);
+                job.put("attempts", 0);
+                jobs.add(job);
+            } else if (STATUS_RUNNING.equals(job.optString("status"))) {
+                return;
+            }
+
+            if (prompt != null) {
+                job.put("prompt", prompt);
+            }
+            job.put("priority", priority);
+            job.put("status", STATUS_QUEUED);
+            job.put("sequence", ++sequence);
+            job.put("updated_at", System.currentTimeMillis());
+            job.remove("message");
+        } catch (JSONException e) {
+            return;
+        }
+        save();
+    }
+
+    // Returns the next job to run, already marked running, or null if none can start now
+    public synchronized JSONObject takeNext() {
+        if (paused) {
+            return null;
+        }
+
+        JSONObject next = null;
+        for (JSONObject job : jobs) {
+            if (!STATUS_QUEUED.equals(job.optString("status"))) {
+                continue;
+            }
+            if (next == null
+                || job.optInt("priority") > next.optInt("priority")
+                || (job.optInt("priority") == next.optInt("priority") && job.optLong("sequence") < next.optLong("sequence"))) {
+                next = job;
+            }
+        }
+
+        if (next == null) {
+            return null;
+        }
+
+        try {
+            next.put("status", STATUS_RUNNING);
+            next.put("attempts", next.optInt("attempts") + 1);
+            next.put("updated_at", System.currentTimeMillis());
+        } catch (JSONException e) {
+            return null;
+        }
+        save();
+        return copy(next);
+    }
+
+    public synchronized void setStatus(String projectId, String status, String message) {
+        JSONObject job = find(projectId);
+        if (job == null) {
+            return;
+        }
+
+        try {
+            job.put("status", status);
+            job.put("updated_at", System.currentTimeMillis());
+            if (message != null) {
+                job.put("message", message);
+            }
+            if (STATUS_QUEUED.equals(status)) {
+                job.put("sequence", ++sequence);
+            }
+        } catch (JSONException e) {
+            return;
+        }
+        pruneFinished();
+        save();
+    }
+
+    public synchronized String getStatus(String projectId) {
+        JSONObject job = find(projectId);
+        return job != null ? job.optString("status") : null;
+    }
+
+    public synchronized JSONObject getJob(String projectId) {
+        JSONObject job = find(projectId);
+        return job != null ? copy(job) : null;
+    }
+
+    // Jobs left "running" by a process that died go back to the queue; returns how many
+    public synchronized int requeueInterrupted() {
+        int count = 0;
+        for (JSONObject job : jobs) {
+            if (STATUS_RUNNING.equals(job.optString("status"))) {
+                try {
+                    job.put("status", STATUS_QUEUED);
+                    job.put("updated_at", System.currentTimeMillis());
+                    count++;
+                } catch (JSONException e) {
+                    // Ignore
+                }
+            }
+        }
+        if (count > 0) {
+            save();
+        }
+        return count;
+    }
+
+    public synchronized boolean hasPendingJobs() {
+        for (JSONObject job : jobs) {
+            String status = job.optString("status");
+            if (STATUS_QUEUED.equals(status) || STATUS_RUNNING.equals(status)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public synchronized int countByStatus(String status) {
+        int count = 0;
+        for (JSONObject job : jobs) {
+            if (status.equals(job.optString("status"))) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public synchronized List<String> getProjectIds(String status) {
+        List<String> projectIds = new ArrayList<>();
+        for (JSONObject job : jobs) {
+            if (status.equals(job.optString("status"))) {
+                projectIds.add(job.optString("project_id"));
+            }
+        }
+        return projectIds;
+    }
+
+    public synchronized boolean isPaused() {
+        return paused;
+    }
+
+    public synchronized void setPaused(boolean paused) {
+        this.paused = paused;
+        save();
+    }
+
+    public synchronized JSONArray getJobs() {
+        JSONArray list = new JSONArray();
+        for (JSONObject job : jobs) {
+            list.put(copy(job));
+        }
+        return list;
+    }
+
+    private JSONObject find(String projectId) {
+        for (JSONObject job : jobs) {
+            if (job.optString("project_id").equals(projectId)) {
+                return job;
+            }
+        }
+        return null;
+    }
+
+    // Keep the most recent finished jobs for the record, drop the rest
+    private void pruneFinished() {
+        List<JSONObject> finished = new ArrayList<>();
+        for (JSONObject job : jobs) {
+            String status = job.optString("status");
+            if (STATUS_COMPLETED.equals(status) || STATUS_FAILED.equals(status) || STATUS_CANCELLED.equals(status)) {
+                finished.add(job);
+            }
+        }
+
+        for (int i = 0; i < finished.size() - MAX_FINISHED_JOBS; i++) {
+            jobs.remove(finished.get(i));
+        }
+    }
+
+    private static JSONObject copy(JSONObject job) {
+        try {
+            return new JSONObject(job.toString());
+        } catch (JSONException e) {
+            return new JSONObject();
+        }
+    }
+
+    private void load() {
+        if (!queueFile.exists()) {
+            return;
+        }
+
+        try {
+            JSONObject state = new JSONObject(FileUtils.readFromFile(queueFile));
+            paused = state.optBoolean("paused", false);
+            JSONArray list = state.optJSONArray("jobs");
+            if (list != null) {
+                for (int i = 0; i < list.length(); i++) {
+                    JSONObject job = list.optJSONObject(i);
+                    if (job != null && !job.optString("project_id", "").isEmpty()) {
+                        jobs.add(job);
+                        sequence = Math.max(sequence, job.optLong("sequence"));
+                    }
+                }
+            }
+        } catch (JSONException e) {
+            jobs = new ArrayList<>();
+        }
+    }
+
+    // Written to a temporary file and renamed so a crash never leaves a truncated queue
+    private void save() {
+        try {
+            JSONArray list = new JSONArray();
+            for (JSONObject job : jobs) {
+                list.put(job);
+            }
+
+            JSONObject state = new JSONObject();
+            state.put("paused", paused);
+            state.put("jobs", list);
+
+            File temp = new File(queueFile.getPath() + ".tmp");
+            if (!FileUtils.writeToFile(temp, state.toString())) {
+                return;
+            }
+            // renameTo swaps the queue in atomically, so a crash leaves the old or the new list
+            if (!temp.renameTo(queueFile)) {
+                temp.delete();
+            }
+        } catch (JSONException e) {
+            // Ignore
+        }
+    }
+}
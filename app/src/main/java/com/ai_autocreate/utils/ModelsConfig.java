@@ -0,0 +1,144 @@
+package com.ai_autocreate.utils;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ModelsConfig {
+    private static ModelsConfig instance;
+
+    private File configFile;
+    private long loadedModified = -1;
+    private List<JSONObject> models = new ArrayList<>();
+
+    private ModelsConfig() {
+        this.configFile = new File(StoragePaths.getConfigDir() + "/models_default.json");
+    }
+
+    public static synchronized ModelsConfig getInstance() {
+        if (instance == null) {
+            instance = new ModelsConfig();
+        }
+        return instance;
+    }
+
+    public synchronized List<JSONObject> getModels() {
+        reloadIfChanged();
+        return new ArrayList<>(models);
+    }
+
+    public synchronized JSONObject findModelByEndpoint(String endpoint) {
+        if (endpoint == null) {
+            return null;
+        }
+
+        reloadIfChanged();
+
+        // Prefer an exact match, then fall back to a base endpoint prefix
+        JSONObject prefixMatch = null;
+        for (JSONObject model : models) {
+            String modelEndpoint = model.optString("endpoint", "");
+            if (modelEndpoint.isEmpty()) {
+                continue;
+            }
+
+            if (modelEndpoint.equals(endpoint)) {
+                return model;
+            }
+
+            if (endpoint.startsWith(modelEndpoint) && prefixMatch == null) {
+                prefixMatch = model;
+            }
+        }
+
+        return prefixMatch;
+    }
+
+    // Only the model configured for exactly this endpoint, without the base prefix fallback
+    public synchronized JSONObject findModelByExactEndpoint(String endpoint) {
+        if (endpoint == null) {
+            return null;
+        }
+
+        reloadIfChanged();
+        for (JSONObject model : models) {
+            if (endpoint.equals(model.optString("endpoint", ""))) {
+                return model;
+            }
+        }
+        return null;
+    }
+
+    public synchronized List<JSONObject> getModelsByType(String type) {
+        reloadIfChanged();
+
+        List<JSONObject> result = new ArrayList<>();
+        for (JSONObject model : models) {
+            if (type.equals(model.optString("type", ""))) {
+                result.add(model);
+            }
+        }
+        return result;
+    }
+
+    public int getMaxConcurrency(String endpoint, int defaultValue) {
+        JSONObject model = findModelByEndpoint(endpoint);
+        if (model == null) {
+            return defaultValue;
+        }
+
+        int value = model.optInt("max_concurrency", defaultValue);
+        return value > 0 ? value : defaultValue;
+    }
+
+    // 0 means the model has no configured request rate limit
+    public int getRequestsPerMinute(String endpoint, int defaultValue) {
+        JSONObject model = findModelByEndpoint(endpoint);
+        if (model == null) {
+            return defaultValue;
+        }
+
+        int value = model.optInt("requests_per_minute", defaultValue);
+        return value >= 0 ? value : defaultValue;
+    }
+
+    private void reloadIfChanged() {
+        long modified = configFile.exists() ? configFile.lastModified() : 0;
+        if (modified == loadedModified) {
+            return;
+        }
+
+        loadedModified = modified;
+        models = new ArrayList<>();
+
+        if (modified == 0) {
+            return;
+        }
+
+        try {
+            String jsonContent = FileUtils.readFromFile(configFile).trim();
+
+            // The models screens store a plain array, the bundled default wraps it in an object
+            JSONArray modelsArray;
+            if (jsonContent.startsWith("[")) {
+                modelsArray = new JSONArray(jsonContent);
+            } else {
+                modelsArray = new JSONObject(jsonContent).optJSONArray("models");
+            }
+
+            if (modelsArray != null) {
+                for (int i = 0; i < modelsArray.length(); i++) {
+                    JSONObject model = modelsArray.optJSONObject(i);
+                    if (model != null) {
+                        models.add(model);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            models = new ArrayList<>();
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.ai_autocreate.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ParallelRunner {
+    private static final int MAX_THREADS = 16;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static ThreadPoolExecutor executor;
+
+    public interface IndexedTask<T> {
+        T run(int index) throws Exception;
+    }
+
+    public interface ProgressListener {
+        void onProgress(int index, int completed, int total);
+    }
+
+    public static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS,
+                                              KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                                              new LinkedBlockingQueue<Runnable>(),
+                                              new NamedThreadFactory("parallel-io"));
+            executor.allowCoreThreadTimeOut(true);
+        }
+        return executor;
+    }
+
+    // Runs task for every index in [0, count) with at most maxConcurrency in flight.
+    // Results come back in index order; a task that throws leaves null in its slot.
+    public static <T> List<T> runOrdered(int count, int maxConcurrency, final IndexedTask<T> task,
+                                         ProgressListener listener) throws InterruptedException {
+        return runOrdered(count, maxConcurrency, task, listener, CancellationToken.NONE);
+    }
+
+    // Cancelling the token stops submitting tasks, cancels those in flight and throws InterruptedException.
+    // Tasks should also pass the token to their own blocking calls so those abort promptly.
+    public static <T> List<T> runOrdered(int count, int maxConcurrency, final IndexedTask<T> task,
+                                         ProgressListener listener, CancellationToken token) throws InterruptedException {
+        List<T> results = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            results.add(null);
+        }
+
+        if (count == 0) {
+            return results;
+        }
+
+        int limit = Math.max(1, Math.min(maxConcurrency, count));
+        ExecutorCompletionService<IndexedResult<T>> completionService =
+            new ExecutorCompletionService<>(getExecutor());
+        final List<Future<IndexedResult<T>>> futures = new ArrayList<>();
+
+        // Cancelled futures land in the completion queue, which wakes take() below
+        Runnable cancelFutures = new Runnable() {
+            @Override
+            public void run() {
+                synchronized (futures) {
+                    for (Future<IndexedResult<T>> future : futures) {
+                        future.cancel(true);
+                    }
+                }
+            }
+        };
+        token.register(cancelFutures);
+
+        int next = 0;
+        int completed = 0;
+
+        try {
+            // Fill the window, then submit one new task per completion
+            while (next < limit) {
+                submit(completionService, futures, createCallable(task, next++));
+            }
+
+            while (completed < count) {
+                if (token.isCancelled()) {
+                    throw new InterruptedException("Parallel tasks cancelled");
+                }
+
+                IndexedResult<T> result = completionService.take().get();
+                results.set(result.index, result.value);
+                completed++;
+
+                if (listener != null) {
+                    listener.onProgress(result.index, completed, count);
+                }
+
+                if (next < count && !token.isCancelled()) {
+                    submit(completionService, futures, createCallable(task, next++));
+                }
+            }
+        } catch (ExecutionException e) {
+            // createCallable never throws, so this can only be a cancelled task
+            throw new InterruptedException("Parallel task failed: " + e.getMessage());
+        } catch (CancellationException e) {
+            throw new InterruptedException("Parallel tasks cancelled");
+        } finally {
+            token.unregister(cancelFutures);
+            if (completed < count) {
+                cancelFutures.run();
+            }
+        }
+
+        return results;
+    }
+
+    private static <T> void submit(ExecutorCompletionService<IndexedResult<T>> completionService,
+                                   List<Future<IndexedResult<T>>> futures, Callable<IndexedResult<T>> callable) {
+        synchronized (futures) {
+            futures.add(completionService.submit(callable));
+        }
+    }
+
+    private static <T> Callable<IndexedResult<T>> createCallable(final IndexedTask<T> task, final int index) {
+        return new Callable<IndexedResult<T>>() {
+            @Override
+            public IndexedResult<T> call() {
+                T value = null;
+                try {
+                    value = task.run(index);
+                } catch (Exception e) {
+                    // The task is responsible for logging its own failure
+                }
+                return new IndexedResult<>(index, value);
+            }
+        };
+    }
+
+    private static class IndexedResult<T> {
+        final int index;
+        final T value;
+
+        IndexedResult(int index, T value) {
+            this.index = index;
+            this.value = value;
+        }
+    }
+
+    static class NamedThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger counter = new AtomicInteger();
+
+        NamedThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.ai_autocreate.utils;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.util.Locale;
+
+// Step-level checkpoints for a project, kept in its checkpoints directory:
+//   job.json                  what to resume: prompt, status ("running", "paused", "cancelled", "completed")
+//   step_<stepId>.json        the output of a whole step (prompt analysis, script)
+//   <kind>_<index>.json       one unit of a fanned-out step (a scene image, a dialogue clip)
+// Every record carries a fingerprint of the input that produced it, so a changed prompt or
+// scene never reuses stale work, and units are only reused while their output file exists.
+// Files are written to a temporary name and renamed, so a crash never leaves half a record.
+public class ProjectCheckpoint {
+    public static final String STATUS_RUNNING = "running";
+    public static final String STATUS_PAUSED = "paused";
+    public static final String STATUS_CANCELLED = "cancelled";
+    public static final String STATUS_COMPLETED = "completed";
+
+    private static final String JOB_FILE = "job.json";
+
+    private final File dir;
+
+    public ProjectCheckpoint(String projectId) {
+        this.dir = new File(StoragePaths.getProjectCheckpointsDir(projectId));
+    }
+
+    // Returns null when the step has not completed for this exact input
+    public JSONObject loadStep(String stepId, String input) {
+        JSONObject record = readRecord(new File(dir, "step_" + stepId + ".json"), input);
+        return record != null ? record.optJSONObject("output") : null;
+    }
+
+    public void saveStep(String stepId, String input, JSONObject output) {
+        writeRecord(new File(dir, "step_" + stepId + ".json"), input, output);
+    }
+
+    // Returns null unless the unit completed for this exact input and its output file is still there
+    public JSONObject loadUnit(String kind, int index, String input) {
+        JSONObject record = readRecord(getUnitFile(kind, index), input);
+        JSONObject output = record != null ? record.optJSONObject("output") : null;
+        if (output == null) {
+            return null;
+        }
+
+        String path = output.optString("path", "");
+        if (path.isEmpty() || !new File(path).exists()) {
+            return null;
+        }
+        return output;
+    }
+
+    public void saveUnit(String kind, int index, String input, JSONObject output) {
+        writeRecord(getUnitFile(kind, index), input, output);
+    }
+
+    public JSONObject loadJob() {
+        File file = new File(dir, JOB_FILE);
+        if (!file.exists()) {
+            return null;
+        }
+
+        try {
+            return new JSONObject(FileUtils.readFromFile(file));
+        } catch (JSONException e) {
+            return null;
+        }
+    }
+
+    public void saveJob(JSONObject job) {
+        writeAtomically(new File(dir, JOB_FILE), job.toString());
+    }
+
+    // Updates just the status of the job record, keeping everything else
+    public void setJobStatus(String status) {
+        JSONObject job = loadJob();
+        if (job == null) {
+            return;
+        }
+
+        try {
+            job.put("status", status);
+            job.put("updated_at", System.currentTimeMillis());
+        } catch (JSONException e) {
+            return;
+        }
+        saveJob(job);
+    }
+
+    private File getUnitFile(String kind, int index) {
+        return new File(dir, String.format(Locale.US, "%s_%03d.json", kind, index));
+    }
+
+    private JSONObject readRecord(File file, String input) {
+        if (!file.exists()) {
+            return null;
+        }
+
+        try {
+            JSONObject record = new JSONObject(FileUtils.readFromFile(file));
+            if (!fingerprint(input).equals(record.optString("input", null))) {
+                return null;
+            }
+            return record;
+        } catch (JSONException e) {
+            file.delete();
+            return null;
+        }
+    }
+
+    private void writeRecord(File file, String input, JSONObject output) {
+        try {
+            JSONObject record = new JSONObject();
+            record.put("input", fingerprint(input));
+            record.put("output", output);
+            record.put("saved_at", System.currentTimeMillis());
+            writeAtomically(file, record.toString());
+        } catch (JSONException e) {
+            // A missing checkpoint only costs a repeat of the work
+        }
+    }
+
+    private static String fingerprint(String input) {
+        return ResponseCache.keyFor(input != null ? input : "", new JSONObject());
+    }
+
+    private static void writeAtomically(File file, String content) {
+        File temp = new File(file.getPath() + ".tmp");
+        if (!FileUtils.writeToFile(temp, content)) {
+            return;
+        }
+        // Renaming over the old checkpoint keeps one of the two intact if the app dies here
+        if (!temp.renameTo(file)) {
+            temp.delete();
+        }
+    }
+}
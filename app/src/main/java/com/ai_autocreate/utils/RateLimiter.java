@@ -0,0 +1,268 @@
+package com.ai_autocreate.utils;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+// Client-side throttle keyed by API key and endpoint. Each bucket holds a token bucket
+// for requests_per_minute and a cap on requests in flight (max_concurrency), both read
+// from the model entry in models_default.json. Callers wait for a permit only as long as
+// their deadline allows and are turned away immediately when it can't be met.
+public class RateLimiter {
+    private static final int DEFAULT_MAX_CONCURRENCY = 4;
+    // Refill a little below the provider limit; steady progress beats bouncing off 429s
+    private static final double TARGET_UTILIZATION = 0.9;
+    private static final long MINUTE_MS = 60 * 1000;
+
+    private static RateLimiter instance;
+
+    private final ConcurrentHashMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    private RateLimiter() {
+    }
+
+    public static synchronized RateLimiter getInstance() {
+        if (instance == null) {
+            instance = new RateLimiter();
+        }
+        return instance;
+    }
+
+    // Returns null if no permit can be had before deadline (an absolute time in ms)
+    public Permit acquire(String apiKey, String endpoint, long deadline) throws InterruptedException {
+        return acquire(apiKey, endpoint, deadline, CancellationToken.NONE);
+    }
+
+    // Also returns null as soon as the token is cancelled, without waiting out the throttle
+    public Permit acquire(String apiKey, String endpoint, long deadline, CancellationToken token) throws InterruptedException {
+        final Bucket bucket = getBucket(apiKey, endpoint);
+        bucket.configure(ModelsConfig.getInstance().getRequestsPerMinute(endpoint, 0),
+                         ModelsConfig.getInstance().getMaxConcurrency(endpoint, DEFAULT_MAX_CONCURRENCY));
+
+        // Wake the slot wait below on cancel
+        Runnable wake = new Runnable() {
+            @Override
+            public void run() {
+                bucket.wakeWaiters();
+            }
+        };
+        token.register(wake);
+
+        try {
+            if (!bucket.acquireSlot(deadline, token)) {
+                bucket.recordRejected();
+                return null;
+            }
+        } finally {
+            token.unregister(wake);
+        }
+
+        long wait = bucket.reserveToken(deadline);
+        if (wait < 0) {
+            bucket.releaseSlot();
+            bucket.recordRejected();
+            return null;
+        }
+
+        if (wait > 0) {
+            boolean slept;
+            try {
+                slept = token.sleep(wait);
+            } catch (InterruptedException e) {
+                bucket.releaseSlot();
+                throw e;
+            }
+            if (!slept) {
+                bucket.releaseSlot();
+                return null;
+            }
+        }
+
+        return new Permit(bucket);
+    }
+
+    // The provider pushed back anyway; hold everyone on this key and endpoint off for a while
+    public void onRateLimited(String apiKey, String endpoint, long retryAfterMs) {
+        getBucket(apiKey, endpoint).blockFor(retryAfterMs >= 0 ? retryAfterMs : MINUTE_MS / 4);
+    }
+
+    public JSONObject getStats() {
+        JSONObject stats = new JSONObject();
+        JSONArray list = new JSONArray();
+
+        try {
+            for (Bucket bucket : buckets.values()) {
+                list.put(bucket.toJSON());
+            }
+            stats.put("buckets", list);
+        } catch (JSONException e) {
+            // Ignore
+        }
+
+        return stats;
+    }
+
+    private Bucket getBucket(String apiKey, String endpoint) {
+        // Never keep the raw key around as a map key
+        String keyId = apiKey == null || apiKey.isEmpty() ? "anonymous" : Integer.toHexString(apiKey.hashCode());
+        String bucketKey = endpoint + "|" + keyId;
+
+        Bucket bucket = buckets.get(bucketKey);
+        if (bucket == null) {
+            Bucket created = new Bucket(endpoint, keyId);
+            bucket = buckets.putIfAbsent(bucketKey, created);
+            if (bucket == null) {
+                bucket = created;
+            }
+        }
+        return bucket;
+    }
+
+    public static class Permit {
+        private final Bucket bucket;
+        private boolean released = false;
+
+        private Permit(Bucket bucket) {
+            this.bucket = bucket;
+        }
+
+        public synchronized void release() {
+            if (!released) {
+                released = true;
+                bucket.releaseSlot();
+            }
+        }
+    }
+
+    private static class Bucket {
+        private final String endpoint;
+        private final String keyId;
+
+        private int requestsPerMinute = 0; // 0 means no rate limit, only the concurrency cap
+        private int maxConcurrency = DEFAULT_MAX_CONCURRENCY;
+        private double tokens = 0;
+        private long lastRefill = System.currentTimeMillis();
+        private long blockedUntil = 0;
+        private int inFlight = 0;
+
+        private long granted = 0;
+        private long rejected = 0;
+        private long throttledWaitMs = 0;
+
+        Bucket(String endpoint, String keyId) {
+            this.endpoint = endpoint;
+            this.keyId = keyId;
+        }
+
+        synchronized void configure(int requestsPerMinute, int maxConcurrency) {
+            if (requestsPerMinute != this.requestsPerMinute) {
+                refill();
+                boolean wasUnlimited = this.requestsPerMinute == 0;
+                this.requestsPerMinute = requestsPerMinute;
+                // A new or previously unlimited bucket starts full, so the first requests on a key don't wait
+                tokens = wasUnlimited ? getCapacity() : Math.min(tokens, getCapacity());
+            }
+
+            if (maxConcurrency != this.maxConcurrency) {
+                this.maxConcurrency = maxConcurrency;
+                notifyAll();
+            }
+        }
+
+        synchronized boolean acquireSlot(long deadline, CancellationToken token) throws InterruptedException {
+            while (inFlight >= maxConcurrency) {
+                if (token.isCancelled()) {
+                    return false;
+                }
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                wait(remaining);
+            }
+
+            inFlight++;
+            return true;
+        }
+
+        synchronized void releaseSlot() {
+            inFlight--;
+            notifyAll();
+        }
+
+        synchronized void wakeWaiters() {
+            notifyAll();
+        }
+
+        // Takes a token, possibly on credit, and returns how long to wait before using it,
+        // or -1 without taking anything if that wait would run past the deadline
+        synchronized long reserveToken(long deadline) {
+            long now = System.currentTimeMillis();
+            long wait = Math.max(0, blockedUntil - now);
+
+            if (requestsPerMinute > 0) {
+                refill();
+                if (tokens < 1) {
+                    wait = Math.max(wait, (long) Math.ceil((1 - tokens) / getRatePerMs()));
+                }
+            }
+
+            if (now + wait > deadline) {
+                return -1;
+            }
+
+            if (requestsPerMinute > 0) {
+                tokens -= 1;
+            }
+            granted++;
+            throttledWaitMs += wait;
+            return wait;
+        }
+
+        synchronized void blockFor(long ms) {
+            blockedUntil = Math.max(blockedUntil, System.currentTimeMillis() + ms);
+            if (requestsPerMinute > 0) {
+                refill();
+                tokens = Math.min(tokens, 0);
+            }
+        }
+
+        synchronized void recordRejected() {
+            rejected++;
+        }
+
+        synchronized JSONObject toJSON() throws JSONException {
+            refill();
+            JSONObject json = new JSONObject();
+            json.put("endpoint", endpoint);
+            json.put("key_id", keyId);
+            json.put("requests_per_minute", requestsPerMinute);
+            json.put("max_concurrency", maxConcurrency);
+            json.put("in_flight", inFlight);
+            json.put("tokens", requestsPerMinute > 0 ? tokens : -1);
+            json.put("granted", granted);
+            json.put("rejected", rejected);
+            json.put("throttled_wait_ms", throttledWaitMs);
+            return json;
+        }
+
+        // A burst of a tenth of the limit plus a refill at 90% never exceeds the limit in any minute
+        private double getCapacity() {
+            return Math.max(1, requestsPerMinute * (1 - TARGET_UTILIZATION));
+        }
+
+        private double getRatePerMs() {
+            return requestsPerMinute * TARGET_UTILIZATION / MINUTE_MS;
+        }
+
+        private void refill() {
+            long now = System.currentTimeMillis();
+            if (requestsPerMinute > 0) {
+                tokens = Math.min(getCapacity(), tokens + (now - lastRefill) * getRatePerMs());
+            }
+            lastRefill = now;
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package com.ai_autocreate.utils;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Collects single-input requests for the same endpoint, key and parameters for a short
+// window and sends them as one {"inputs": [...]} call, then hands each caller its own
+// slice of the answer in the same shape a single request would have returned.
+public class RequestBatcher {
+    private static final long BATCH_WINDOW_MS = 50;
+    private static final int DEFAULT_MAX_BATCH_SIZE = 8;
+
+    private static RequestBatcher instance;
+
+    private final Map<String, Batch> openBatches = new HashMap<>();
+    private final ScheduledExecutorService timer;
+    private final ExecutorService sender;
+
+    // Metrics
+    private final AtomicLong batchedRequests = new AtomicLong();
+    private final AtomicLong batchesSent = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+
+    private RequestBatcher() {
+        this.timer = Executors.newSingleThreadScheduledExecutor(new ParallelRunner.NamedThreadFactory("batch-timer"));
+        this.sender = Executors.newCachedThreadPool(new ParallelRunner.NamedThreadFactory("batch"));
+    }
+
+    public static synchronized RequestBatcher getInstance() {
+        if (instance == null) {
+            instance = new RequestBatcher();
+        }
+        return instance;
+    }
+
+    // Only a single string input with no other per-request fields can share a call
+    public static boolean isBatchable(JSONObject payload) {
+        if (payload == null || !(payload.opt("inputs") instanceof String)) {
+            return false;
+        }
+
+        Iterator<String> keys = payload.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            if (!"inputs".equals(key) && !"parameters".equals(key) && !"options".equals(key)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Waits at most the options' deadline, and returns null as soon as their token is cancelled
+    public JSONObject submit(HFClient client, String endpoint, String apiKey, JSONObject payload,
+                             HFClient.RequestOptions options) {
+        if (!isBatchable(payload)) {
+            return client.requestModel(endpoint, apiKey, payload, options);
+        }
+
+        // Requests only batch together when everything but the input is identical
+        JSONObject shared = new JSONObject();
+        try {
+            shared.put("parameters", payload.opt("parameters"));
+            shared.put("options", payload.opt("options"));
+        } catch (JSONException e) {
+            return client.requestModel(endpoint, apiKey, payload, options);
+        }
+        String batchKey = ResponseCache.keyFor(endpoint + "\n" + (apiKey != null ? apiKey : ""), shared);
+        int maxBatchSize = getMaxBatchSize(endpoint);
+
+        CancellationToken token = options.getCancellationToken();
+        Entry entry = new Entry(payload, options);
+        Batch full = null;
+
+        synchronized (openBatches) {
+            Batch batch = openBatches.get(batchKey);
+            if (batch == null) {
+                batch = new Batch(client, endpoint, apiKey, batchKey);
+                openBatches.put(batchKey, batch);
+                scheduleFlush(batch);
+            }
+
+            batch.entries.add(entry);
+            if (batch.entries.size() >= maxBatchSize) {
+                openBatches.remove(batchKey);
+                full = batch;
+            }
+        }
+
+        if (full != null) {
+            sendAsync(full);
+        }
+
+        try {
+            if (!token.await(entry.done, options.getDeadlineMs())) {
+                return null;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        return entry.response;
+    }
+
+    public JSONObject getStats() {
+        JSONObject stats = new JSONObject();
+        try {
+            long requests = batchedRequests.get();
+            long batches = batchesSent.get();
+            stats.put("batched_requests", requests);
+            stats.put("batches_sent", batches);
+            stats.put("average_batch_size", batches > 0 ? (double) requests / batches : 0.0);
+            stats.put("fallbacks", fallbacks.get());
+        } catch (JSONException e) {
+            // Ignore
+        }
+        return stats;
+    }
+
+    private int getMaxBatchSize(String endpoint) {
+        JSONObject model = ModelsConfig.getInstance().findModelByEndpoint(endpoint);
+        int value = model != null ? model.optInt("max_batch_size", DEFAULT_MAX_BATCH_SIZE) : DEFAULT_MAX_BATCH_SIZE;
+        return Math.max(1, value);
+    }
+
+    private void scheduleFlush(final Batch batch) {
+        timer.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (openBatches) {
+                        // Already sent because it filled up
+                        if (openBatches.get(batch.key) != batch) {
+                            return;
+                        }
+                        openBatches.remove(batch.key);
+                    }
+                    sendAsync(batch);
+                }
+            }, BATCH_WINDOW_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void sendAsync(final Batch batch) {
+        sender.execute(new Runnable() {
+                @Override
+                public void run() {
+                    send(batch);
+                }
+            });
+    }
+
+    private void send(Batch batch) {
+        // Callers cancelled while the window was open have already gone
+        List<Entry> entries = new ArrayList<>();
+        for (Entry entry : batch.entries) {
+            if (!entry.token.isCancelled()) {
+                entries.add(entry);
+            }
+        }
+
+        if (entries.isEmpty()) {
+            return;
+        }
+        if (entries.size() == 1) {
+            sendEach(batch, entries);
+            return;
+        }
+
+        JSONObject batchPayload;
+        try {
+            batchPayload = new JSONObject(entries.get(0).payload.toString());
+            JSONArray inputs = new JSONArray();
+            for (Entry entry : entries) {
+                inputs.put(entry.payload.getString("inputs"));
+            }
+            batchPayload.put("inputs", inputs);
+        } catch (JSONException e) {
+            sendEach(batch, entries);
+            return;
+        }
+
+        batchesSent.incrementAndGet();
+        batchedRequests.addAndGet(entries.size());
+        JSONObject response = requestShared(batch, entries, batchPayload);
+
+        // The call itself failed or ran out of time; one request per input would fare no better
+        if (response == null) {
+            for (Entry entry : entries) {
+                entry.complete(null);
+            }
+            return;
+        }
+
+        // An array response is wrapped as {"0": [...]} with one element per input
+        JSONArray outputs = response.optJSONArray("0");
+        if (outputs != null && outputs.length() == entries.size()) {
+            try {
+                for (int i = 0; i < entries.size(); i++) {
+                    entries.get(i).complete(toSingleResponse(outputs.get(i)));
+                }
+                return;
+            } catch (JSONException e) {
+                // Fall through to one request per input
+            }
+        }
+
+        // The endpoint answered, but not per input; don't fail the callers for our optimization
+        fallbacks.incrementAndGet();
+        sendEach(batch, entries);
+    }
+
+    // The shared call runs until the latest caller's deadline and is only aborted once every
+    // caller in it has cancelled
+    private JSONObject requestShared(Batch batch, List<Entry> entries, JSONObject batchPayload) {
+        final CancellationToken shared = new CancellationToken();
+        final AtomicInteger waiting = new AtomicInteger(entries.size());
+        Runnable onCancel = new Runnable() {
+            @Override
+            public void run() {
+                if (waiting.decrementAndGet() == 0) {
+                    shared.cancel();
+                }
+            }
+        };
+
+        long deadlineAt = 0;
+        for (Entry entry : entries) {
+            entry.token.register(onCancel);
+            deadlineAt = Math.max(deadlineAt, entry.deadlineAt);
+        }
+
+        try {
+            long remaining = deadlineAt - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return null;
+            }
+            HFClient.RequestOptions options = entries.get(0).options.copyWithToken(shared).setDeadlineMs(remaining);
+            return batch.client.requestModel(batch.endpoint, batch.apiKey, batchPayload, options);
+        } finally {
+            for (Entry entry : entries) {
+                entry.token.unregister(onCancel);
+            }
+        }
+    }
+
+    // Each input on its own, with its caller's options and what is left of its deadline
+    private void sendEach(Batch batch, List<Entry> entries) {
+        for (Entry entry : entries) {
+            if (entry.isDone()) {
+                continue;
+            }
+
+            long remaining = entry.deadlineAt - System.currentTimeMillis();
+            if (entry.token.isCancelled() || remaining <= 0) {
+                entry.complete(null);
+                continue;
+            }
+            HFClient.RequestOptions options = entry.options.copyWithToken(entry.token).setDeadlineMs(remaining);
+            entry.complete(batch.client.requestModel(batch.endpoint, batch.apiKey, entry.payload, options));
+        }
+    }
+
+    // Matches what a single-input request returns: {"0": [{"generated_text": ...}]}
+    private static JSONObject toSingleResponse(Object output) throws JSONException {
+        JSONArray single;
+        if (output instanceof JSONArray) {
+            single = (JSONArray) output;
+        } else {
+            single = new JSONArray();
+            single.put(output);
+        }
+        return new JSONObject().put("0", single);
+    }
+
+    private static class Batch {
+        final HFClient client;
+        final String endpoint;
+        final String apiKey;
+        final String key;
+        final List<Entry> entries = new ArrayList<>();
+
+        Batch(HFClient client, String endpoint, String apiKey, String key) {
+            this.client = client;
+            this.endpoint = endpoint;
+            this.apiKey = apiKey;
+            this.key = key;
+        }
+    }
+
+    private static class Entry {
+        final JSONObject payload;
+        final HFClient.RequestOptions options;
+        final CancellationToken token;
+        final long deadlineAt;
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile JSONObject response;
+
+        Entry(JSONObject payload, HFClient.RequestOptions options) {
+            this.payload = payload;
+            this.options = options;
+            this.token = options.getCancellationToken();
+            this.deadlineAt = System.currentTimeMillis() + options.getDeadlineMs();
+        }
+
+        void complete(JSONObject response) {
+            this.response = response;
+            done.countDown();
+        }
+
+        boolean isDone() {
+            return done.getCount() == 0;
+        }
+    }
+}
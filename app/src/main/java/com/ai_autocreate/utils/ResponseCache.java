@@ -0,0 +1,294 @@
+package com.ai_autocreate.utils;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ResponseCache {
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+    private static final String CACHE_DIR_NAME = "response_cache";
+    private static final String ENTRY_SUFFIX = ".json";
+    private static final long DEFAULT_MAX_BYTES = 100L * 1024 * 1024; // 100 MB
+    private static final long DEFAULT_TTL_MS = 24L * 60 * 60 * 1000; // 24 hours
+    private static final double MAX_CACHEABLE_TEMPERATURE = 0.2;
+
+    private static ResponseCache instance;
+
+    private final File cacheDir;
+    private final boolean enabled;
+    private final long maxBytes;
+    private final long ttlMs;
+    private long currentBytes = -1;
+
+    // Metrics
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong stores = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+
+    private ResponseCache() {
+        this.cacheDir = new File(StoragePaths.getTempDir(), CACHE_DIR_NAME);
+
+        // Honour the cache switches from app_settings.json when present
+        boolean cacheEnabled = true;
+        long cacheBytes = DEFAULT_MAX_BYTES;
+        try {
+            File settingsFile = new File(StoragePaths.getConfigDir() + "/app_settings.json");
+            if (settingsFile.exists()) {
+                JSONObject settings = new JSONObject(FileUtils.readFromFile(settingsFile));
+                JSONObject performance = settings.optJSONObject("performance_settings");
+                if (performance != null) {
+                    cacheEnabled = performance.optBoolean("cache_enabled", true);
+                    cacheBytes = performance.optLong("cache_size_mb", DEFAULT_MAX_BYTES / (1024 * 1024)) * 1024 * 1024;
+                }
+            }
+        } catch (JSONException e) {
+            // Fall back to defaults
+        }
+
+        this.enabled = cacheEnabled;
+        this.maxBytes = cacheBytes;
+        this.ttlMs = DEFAULT_TTL_MS;
+    }
+
+    public static synchronized ResponseCache getInstance() {
+        if (instance == null) {
+            instance = new ResponseCache();
+        }
+        return instance;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Only deterministic requests are worth serving from disk. Text generation samples unless
+    // told otherwise, so a payload only counts when it turns sampling off or sets a low
+    // temperature itself; callers that know their endpoint is deterministic opt in through
+    // HFClient.RequestOptions.setDeterministic.
+    public boolean isCacheable(JSONObject payload) {
+        if (!enabled || payload == null) {
+            return false;
+        }
+
+        JSONObject parameters = payload.optJSONObject("parameters");
+        if (parameters == null) {
+            return false;
+        }
+
+        if (parameters.has("do_sample") && !parameters.optBoolean("do_sample", true)) {
+            return true;
+        }
+
+        return parameters.has("temperature") && parameters.optDouble("temperature", 1) <= MAX_CACHEABLE_TEMPERATURE;
+    }
+
+    public static String keyFor(String endpoint, JSONObject payload) {
+        StringBuilder canonical = new StringBuilder();
+        canonical.append(endpoint).append('\n');
+        appendCanonical(canonical, payload);
+        return sha256Hex(canonical.toString());
+    }
+
+    public synchronized JSONObject get(String key) {
+        File entryFile = new File(cacheDir, key + ENTRY_SUFFIX);
+        if (!entryFile.exists()) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        try {
+            JSONObject entry = new JSONObject(FileUtils.readFromFile(entryFile));
+            long createdAt = entry.optLong("created_at", 0);
+
+            if (System.currentTimeMillis() - createdAt > ttlMs) {
+                removeEntry(entryFile);
+                expirations.incrementAndGet();
+                misses.incrementAndGet();
+                return null;
+            }
+
+            // Touch the entry so eviction sees it as recently used
+            entryFile.setLastModified(System.currentTimeMillis());
+            hits.incrementAndGet();
+            return entry.getJSONObject("response");
+        } catch (JSONException e) {
+            removeEntry(entryFile);
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    public synchronized void put(String key, String endpoint, JSONObject response) {
+        if (!enabled || response == null) {
+            return;
+        }
+
+        try {
+            ensureSizeKnown();
+
+            JSONObject entry = new JSONObject();
+            entry.put("endpoint", endpoint);
+            entry.put("created_at", System.currentTimeMillis());
+            entry.put("response", response);
+
+            File entryFile = new File(cacheDir, key + ENTRY_SUFFIX);
+            File tempFile = new File(cacheDir, key + ".tmp");
+            long previousSize = entryFile.exists() ? entryFile.length() : 0;
+
+            // Write then rename so readers never see a partial entry
+            if (FileUtils.writeToFile(tempFile, entry.toString()) && tempFile.renameTo(entryFile)) {
+                currentBytes += entryFile.length() - previousSize;
+                stores.incrementAndGet();
+                evictIfNeeded();
+            } else {
+                tempFile.delete();
+            }
+        } catch (JSONException e) {
+            // Not cacheable
+        }
+    }
+
+    public synchronized void clear() {
+        File[] files = cacheDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        currentBytes = 0;
+    }
+
+    public JSONObject getStats() {
+        JSONObject stats = new JSONObject();
+
+        try {
+            long hitCount = hits.get();
+            long total = hitCount + misses.get();
+
+            stats.put("enabled", enabled);
+            stats.put("hits", hitCount);
+            stats.put("misses", misses.get());
+            stats.put("hit_ratio", total > 0 ? (double) hitCount / total : 0.0);
+            stats.put("stores", stores.get());
+            stats.put("evictions", evictions.get());
+            stats.put("expirations", expirations.get());
+            synchronized (this) {
+                stats.put("size_bytes", Math.max(0, currentBytes));
+            }
+            stats.put("max_bytes", maxBytes);
+        } catch (JSONException e) {
+            // Ignore
+        }
+
+        return stats;
+    }
+
+    private void ensureSizeKnown() {
+        if (currentBytes >= 0) {
+            return;
+        }
+
+        if (!cacheDir.exists()) {
+            cacheDir.mkdirs();
+        }
+        currentBytes = FileUtils.getDirectorySize(cacheDir);
+    }
+
+    private void evictIfNeeded() {
+        if (currentBytes <= maxBytes) {
+            return;
+        }
+
+        File[] files = cacheDir.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        // Least recently used first
+        List<File> entries = new ArrayList<>(Arrays.asList(files));
+        Collections.sort(entries, new Comparator<File>() {
+                @Override
+                public int compare(File a, File b) {
+                    long diff = a.lastModified() - b.lastModified();
+                    return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+                }
+            });
+
+        Iterator<File> iterator = entries.iterator();
+        while (currentBytes > maxBytes && iterator.hasNext()) {
+            removeEntry(iterator.next());
+            evictions.incrementAndGet();
+        }
+    }
+
+    private void removeEntry(File entryFile) {
+        long size = entryFile.length();
+        if (entryFile.delete() && currentBytes >= 0) {
+            currentBytes -= size;
+        }
+    }
+
+    private static void appendCanonical(StringBuilder out, Object value) {
+        if (value instanceof JSONObject) {
+            JSONObject object = (JSONObject) value;
+            List<String> keys = new ArrayList<>();
+            Iterator<String> iterator = object.keys();
+            while (iterator.hasNext()) {
+                keys.add(iterator.next());
+            }
+            Collections.sort(keys);
+
+            out.append('{');
+            for (int i = 0; i < keys.size(); i++) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                out.append(JSONObject.quote(keys.get(i))).append(':');
+                appendCanonical(out, object.opt(keys.get(i)));
+            }
+            out.append('}');
+        } else if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            out.append('[');
+            for (int i = 0; i < array.length(); i++) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                appendCanonical(out, array.opt(i));
+            }
+            out.append(']');
+        } else if (value instanceof String) {
+            out.append(JSONObject.quote((String) value));
+        } else {
+            out.append(String.valueOf(value));
+        }
+    }
+
+    private static String sha256Hex(String input) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(input.getBytes(CHARSET));
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                hex.append(String.format("%02x", b & 0xff));
+            }
+            return hex.toString();
+        } catch (Exception e) {
+            // SHA-256 is always available; keep a usable key regardless
+            return Integer.toHexString(input.hashCode());
+        }
+    }
+}
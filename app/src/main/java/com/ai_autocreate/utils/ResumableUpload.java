@@ -0,0 +1,424 @@
+package com.ai_autocreate.utils;
+
+import android.content.Context;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+import okhttp3.Call;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+// Uploads a large file in fixed-size chunks so a failure only costs the chunk in flight.
+// Protocol, relative to the model endpoint:
+//   POST   {endpoint}/uploads                       {"file_name", "size", "chunk_size", "chunks": [sha256...]} -> {"upload_id"}
+//   GET    {endpoint}/uploads/{id}                  -> {"received": [chunk indices]}
+//   PUT    {endpoint}/uploads/{id}/chunks/{index}   chunk bytes, Content-Range and X-Chunk-Sha256 headers
+//   POST   {endpoint}/uploads/{id}/complete         -> model response
+// Session state is kept in the project's checkpoints directory and reconciled with the
+// server on resume, so a restarted upload continues from the last acknowledged chunk.
+public class ResumableUpload {
+    public static final long DEFAULT_CHUNK_SIZE = 8L * 1024 * 1024; // 8 MB
+
+    private static final MediaType JSON_MEDIA_TYPE = MediaType.parse("application/json; charset=utf-8");
+    private static final MediaType OCTET_STREAM_MEDIA_TYPE = MediaType.parse("application/octet-stream");
+    private static final int HASH_BUFFER_SIZE = 256 * 1024;
+
+    private JSONLogger logger;
+    private HttpTransport transport;
+    private RetryPolicy retryPolicy;
+    private long chunkSize;
+    private File stateDir;
+
+    public ResumableUpload(Context context) {
+        this(context, DEFAULT_CHUNK_SIZE);
+    }
+
+    public ResumableUpload(Context context, long chunkSize) {
+        this(new JSONLogger(context), chunkSize, null);
+    }
+
+    // stateDir replaces the project's checkpoints directory; null keeps the default
+    ResumableUpload(JSONLogger logger, long chunkSize, File stateDir) {
+        this.logger = logger;
+        this.transport = HttpTransport.getInstance();
+        this.retryPolicy = RetryPolicy.defaultPolicy();
+        this.chunkSize = chunkSize;
+        this.stateDir = stateDir;
+    }
+
+    public JSONObject upload(String endpoint, String apiKey, File file, String projectId,
+                             FileChannelRequestBody.ProgressListener progressListener) {
+        return upload(endpoint, apiKey, file, projectId, progressListener, CancellationToken.NONE);
+    }
+
+    // Cancelling stops after the chunk in flight is aborted; the saved state lets a later call resume
+    public JSONObject upload(String endpoint, String apiKey, File file, String projectId,
+                             final FileChannelRequestBody.ProgressListener progressListener, CancellationToken token) {
+        String baseUrl = endpoint.endsWith("/") ? endpoint.substring(0, endpoint.length() - 1) : endpoint;
+        File stateFile = getStateFile(endpoint, file, projectId);
+
+        try {
+            JSONObject state = loadState(stateFile, file);
+            if (state == null) {
+                state = createState(file);
+            }
+
+            final long totalBytes = file.length();
+            JSONArray chunks = state.getJSONArray("chunks");
+            Set<Integer> acknowledged = new HashSet<>();
+
+            // Reconcile with the server; it is the source of truth for what it already holds
+            String uploadId = state.optString("upload_id", "");
+            if (!uploadId.isEmpty()) {
+                Set<Integer> received = fetchReceivedChunks(baseUrl + "/uploads/" + uploadId, apiKey, endpoint, token);
+                if (received == null) {
+                    logger.log("ResumableUpload", "Upload session " + uploadId + " is gone, starting over");
+                    uploadId = "";
+                } else {
+                    acknowledged.addAll(received);
+                    logger.log("ResumableUpload", "Resuming upload " + uploadId + " with " + received.size() + "/" + chunks.length() + " chunks");
+                }
+            }
+
+            if (uploadId.isEmpty()) {
+                uploadId = createSession(baseUrl + "/uploads", apiKey, endpoint, file, chunks, token);
+                if (uploadId == null) {
+                    return null;
+                }
+                state.put("upload_id", uploadId);
+                saveState(stateFile, state, acknowledged);
+            }
+
+            long acknowledgedBytes = 0;
+            for (int index : acknowledged) {
+                acknowledgedBytes += chunks.getJSONObject(index).getLong("length");
+            }
+
+            for (int index = 0; index < chunks.length(); index++) {
+                if (acknowledged.contains(index)) {
+                    continue;
+                }
+                if (token.isCancelled()) {
+                    logger.log("ResumableUpload", "Upload of " + file.getName() + " cancelled, it can be resumed");
+                    return null;
+                }
+
+                JSONObject chunk = chunks.getJSONObject(index);
+                final long baseBytes = acknowledgedBytes;
+                FileChannelRequestBody.ProgressListener chunkListener = null;
+                if (progressListener != null) {
+                    chunkListener = new FileChannelRequestBody.ProgressListener() {
+                        @Override
+                        public void onProgress(long bytesSent, long chunkBytes) {
+                            progressListener.onProgress(baseBytes + bytesSent, totalBytes);
+                        }
+                    };
+                }
+
+                if (!sendChunk(baseUrl + "/uploads/" + uploadId + "/chunks/" + index, apiKey, endpoint, file, chunk, totalBytes,
+                               chunkListener, token)) {
+                    logger.log("ResumableUpload", "Chunk " + index + " of " + file.getName() + " failed, upload can be resumed");
+                    return null;
+                }
+
+                acknowledged.add(index);
+                acknowledgedBytes += chunk.getLong("length");
+                saveState(stateFile, state, acknowledged);
+            }
+
+            Reply reply = execute(new Request.Builder()
+                                  .url(baseUrl + "/uploads/" + uploadId + "/complete")
+                                  .post(RequestBody.create(JSON_MEDIA_TYPE, "{}")), apiKey, endpoint, "complete upload", token);
+            if (reply == null || reply.code != HttpURLConnection.HTTP_OK) {
+                return null;
+            }
+
+            stateFile.delete();
+            return new JSONObject(reply.body);
+
+        } catch (JSONException e) {
+            logger.log("ResumableUpload", "Error in upload state: " + e.getMessage());
+            return null;
+        } catch (IOException e) {
+            logger.log("ResumableUpload", "Error reading upload file: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private File getStateFile(String endpoint, File file, String projectId) {
+        JSONObject identity = new JSONObject();
+        try {
+            identity.put("path", file.getAbsolutePath());
+            identity.put("size", file.length());
+            identity.put("modified", file.lastModified());
+        } catch (JSONException e) {
+            // Ignore
+        }
+
+        String key = ResponseCache.keyFor(endpoint, identity).substring(0, 16);
+        File dir = stateDir != null ? stateDir : new File(StoragePaths.getProjectCheckpointsDir(projectId));
+        return new File(dir, "upload_" + key + ".json");
+    }
+
+    // Returns null when there is no usable saved state for this exact file
+    private JSONObject loadState(File stateFile, File file) {
+        if (!stateFile.exists()) {
+            return null;
+        }
+
+        try {
+            JSONObject state = new JSONObject(FileUtils.readFromFile(stateFile));
+            if (state.optLong("size") != file.length()
+                || state.optLong("modified") != file.lastModified()
+                || state.optLong("chunk_size") != chunkSize) {
+                stateFile.delete();
+                return null;
+            }
+            return state;
+        } catch (JSONException e) {
+            stateFile.delete();
+            return null;
+        }
+    }
+
+    private JSONObject createState(File file) throws JSONException, IOException {
+        JSONObject state = new JSONObject();
+        state.put("file", file.getAbsolutePath());
+        state.put("size", file.length());
+        state.put("modified", file.lastModified());
+        state.put("chunk_size", chunkSize);
+        state.put("chunks", hashChunks(file));
+        state.put("acknowledged", new JSONArray());
+        return state;
+    }
+
+    private void saveState(File stateFile, JSONObject state, Set<Integer> acknowledged) throws JSONException {
+        JSONArray acked = new JSONArray();
+        for (int index : acknowledged) {
+            acked.put(index);
+        }
+        state.put("acknowledged", acked);
+        state.put("updated_at", System.currentTimeMillis());
+        FileUtils.writeToFile(stateFile, state.toString());
+    }
+
+    private JSONArray hashChunks(File file) throws JSONException, IOException {
+        JSONArray chunks = new JSONArray();
+        FileInputStream input = new FileInputStream(file);
+        FileChannel channel = input.getChannel();
+
+        try {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(HASH_BUFFER_SIZE);
+            long size = file.length();
+            long offset = 0;
+            int index = 0;
+
+            do {
+                long length = Math.min(chunkSize, size - offset);
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                long position = offset;
+
+                while (position < offset + length) {
+                    buffer.clear();
+                    buffer.limit((int) Math.min(buffer.capacity(), offset + length - position));
+                    int read = channel.read(buffer, position);
+                    if (read < 0) {
+                        throw new IOException("Unexpected end of file: " + file.getAbsolutePath());
+                    }
+                    buffer.flip();
+                    digest.update(buffer);
+                    position += read;
+                }
+
+                chunks.put(new JSONObject()
+                           .put("index", index++)
+                           .put("offset", offset)
+                           .put("length", length)
+                           .put("sha256", toHex(digest.digest())));
+                offset += length;
+            } while (offset < size);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 unavailable");
+        } finally {
+            channel.close();
+            input.close();
+        }
+
+        return chunks;
+    }
+
+    private String createSession(String url, String apiKey, String endpoint, File file, JSONArray chunks,
+                                 CancellationToken token) throws JSONException {
+        JSONArray checksums = new JSONArray();
+        for (int i = 0; i < chunks.length(); i++) {
+            checksums.put(chunks.getJSONObject(i).getString("sha256"));
+        }
+
+        JSONObject request = new JSONObject();
+        request.put("file_name", file.getName());
+        request.put("size", file.length());
+        request.put("chunk_size", chunkSize);
+        request.put("chunks", checksums);
+
+        Reply reply = execute(new Request.Builder()
+                              .url(url)
+                              .post(RequestBody.create(JSON_MEDIA_TYPE, request.toString())), apiKey, endpoint, "create upload", token);
+        if (reply == null || reply.code / 100 != 2) {
+            return null;
+        }
+
+        String uploadId = new JSONObject(reply.body).optString("upload_id", "");
+        return uploadId.isEmpty() ? null : uploadId;
+    }
+
+    // Returns null if the server no longer knows the session
+    private Set<Integer> fetchReceivedChunks(String url, String apiKey, String endpoint,
+                                             CancellationToken token) throws JSONException, IOException {
+        Reply reply = execute(new Request.Builder().url(url).get(), apiKey, endpoint, "upload status", token);
+        if (reply == null) {
+            // Unreachable is not the same as forgotten; keep the session for the next try
+            throw new IOException("Upload status unavailable");
+        }
+        if (reply.code != HttpURLConnection.HTTP_OK) {
+            return null;
+        }
+
+        Set<Integer> received = new HashSet<>();
+        JSONArray indices = new JSONObject(reply.body).optJSONArray("received");
+        if (indices != null) {
+            for (int i = 0; i < indices.length(); i++) {
+                received.add(indices.getInt(i));
+            }
+        }
+        return received;
+    }
+
+    private boolean sendChunk(String url, String apiKey, String endpoint, File file, JSONObject chunk, long totalBytes,
+                              FileChannelRequestBody.ProgressListener listener, CancellationToken token) throws JSONException {
+        long offset = chunk.getLong("offset");
+        long length = chunk.getLong("length");
+
+        Request.Builder builder = new Request.Builder()
+            .url(url)
+            .header("Content-Range", String.format(Locale.US, "bytes %d-%d/%d", offset, offset + length - 1, totalBytes))
+            .header("X-Chunk-Sha256", chunk.getString("sha256"))
+            .put(new FileChannelRequestBody(file, OCTET_STREAM_MEDIA_TYPE, offset, length, listener));
+
+        Reply reply = execute(builder, apiKey, endpoint, "chunk upload", token);
+        return reply != null && reply.code / 100 == 2;
+    }
+
+    // Runs one protocol call with the shared retry policy. A checksum mismatch (409/422)
+    // means the chunk was corrupted in transit, so it is resent like a transient failure.
+    private Reply execute(Request.Builder builder, String apiKey, String endpoint, String operation, CancellationToken token) {
+        if (apiKey != null && !apiKey.isEmpty()) {
+            builder.header("Authorization", "Bearer " + apiKey);
+        }
+        Request request = builder.build();
+        EndpointHealth health = EndpointHealth.forEndpoint(endpoint);
+
+        for (int attemptIndex = 0; attemptIndex < retryPolicy.getMaxAttempts(); attemptIndex++) {
+            if (token.isCancelled()) {
+                return null;
+            }
+            if (!health.allowRequest()) {
+                logger.log("ResumableUpload", "Circuit " + health.getState() + ", skipping " + operation + " for: " + endpoint);
+                return null;
+            }
+
+            Reply reply = null;
+            long startTime = System.currentTimeMillis();
+            Response response = null;
+            Runnable cancelCall = null;
+            try {
+                Call call = transport.getClient().newCall(request);
+                cancelCall = HttpTransport.cancelOnToken(call, token);
+                response = call.execute();
+                reply = new Reply(response.code(), response.body() != null ? response.body().string() : "",
+                                  RetryPolicy.parseRetryAfter(response.header("Retry-After")));
+            } catch (IOException e) {
+                if (!token.isCancelled()) {
+                    logger.log("ResumableUpload", "Error during " + operation + ": " + e.getMessage());
+                }
+            } finally {
+                if (cancelCall != null) {
+                    token.unregister(cancelCall);
+                }
+                if (response != null) {
+                    response.close();
+                }
+            }
+
+            if (token.isCancelled()) {
+                health.releaseTrial();
+                return null;
+            }
+
+            int code = reply != null ? reply.code : 0;
+            if (code == 0 || code >= 500) {
+                health.recordFailure(System.currentTimeMillis() - startTime);
+            } else if (code / 100 == 2) {
+                health.recordSuccess(System.currentTimeMillis() - startTime);
+            } else {
+                health.releaseTrial();
+            }
+
+            boolean checksumRejected = code == HttpURLConnection.HTTP_CONFLICT || code == 422;
+            if (reply != null && !checksumRejected && !retryPolicy.isRetryable(code)) {
+                return reply;
+            }
+
+            if (attemptIndex == retryPolicy.getMaxAttempts() - 1) {
+                break;
+            }
+
+            try {
+                if (!token.sleep(retryPolicy.computeDelay(attemptIndex, reply != null ? reply.retryAfterMs : RetryPolicy.NO_HINT))) {
+                    return null;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+
+        logger.log("ResumableUpload", "All " + operation + " attempts failed for: " + endpoint);
+        return null;
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b & 0xff));
+        }
+        return hex.toString();
+    }
+
+    private static class Reply {
+        final int code;
+        final String body;
+        final long retryAfterMs;
+
+        Reply(int code, String body, long retryAfterMs) {
+            this.code = code;
+            this.body = body;
+            this.retryAfterMs = retryAfterMs;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.ai_autocreate.utils;
+
+import org.json.JSONObject;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+public class RetryPolicy {
+    public static final long DEFAULT_DEADLINE_MS = 120000; // 2 minutes
+    public static final long NO_HINT = -1;
+
+    private static final int DEFAULT_MAX_ATTEMPTS = 5;
+    private static final long DEFAULT_BASE_DELAY_MS = 1000;
+    private static final long DEFAULT_MAX_DELAY_MS = 8000;
+    private static final long MAX_HINTED_DELAY_MS = 60000; // never trust a hint beyond a minute
+    private static final double HINT_JITTER = 0.1; // up to 10% on top of a server hint
+
+    private final int maxAttempts;
+    private final long baseDelayMs;
+    private final long maxDelayMs;
+    private final Random random = new Random();
+
+    public RetryPolicy(int maxAttempts, long baseDelayMs, long maxDelayMs) {
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMs = baseDelayMs;
+        this.maxDelayMs = maxDelayMs;
+    }
+
+    public static RetryPolicy defaultPolicy() {
+        return new RetryPolicy(DEFAULT_MAX_ATTEMPTS, DEFAULT_BASE_DELAY_MS, DEFAULT_MAX_DELAY_MS);
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    // statusCode 0 means the request never got an HTTP response (timeout, reset, DNS...)
+    public boolean isRetryable(int statusCode) {
+        if (statusCode == 0) {
+            return true;
+        }
+
+        switch (statusCode) {
+            case 408: // Request Timeout
+            case 425: // Too Early
+            case 429: // Too Many Requests
+                return true;
+            default:
+                return statusCode >= 500;
+        }
+    }
+
+    public long computeDelay(int attempt, long serverHintMs) {
+        synchronized (random) {
+            if (serverHintMs >= 0) {
+                // The server told us how long to wait; add a little jitter so callers don't stampede
+                long hinted = Math.min(serverHintMs, MAX_HINTED_DELAY_MS);
+                return hinted + (long) (hinted * HINT_JITTER * random.nextDouble());
+            }
+
+            // Exponential backoff with full jitter
+            long ceiling = Math.min(maxDelayMs, baseDelayMs << Math.min(attempt, 16));
+            return baseDelayMs / 2 + (long) (random.nextDouble() * Math.max(0, ceiling - baseDelayMs / 2));
+        }
+    }
+
+    // Retry-After is either delta-seconds or an HTTP-date
+    public static long parseRetryAfter(String headerValue) {
+        if (headerValue == null || headerValue.trim().isEmpty()) {
+            return NO_HINT;
+        }
+
+        String value = headerValue.trim();
+        try {
+            return Math.max(0, (long) (Double.parseDouble(value) * 1000));
+        } catch (NumberFormatException e) {
+            // Not a number, try the date form
+        }
+
+        try {
+            SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+            format.setTimeZone(TimeZone.getTimeZone("GMT"));
+            Date date = format.parse(value);
+            return Math.max(0, date.getTime() - System.currentTimeMillis());
+        } catch (Exception e) {
+            return NO_HINT;
+        }
+    }
+
+    // Hosted inference answers 503 {"error": "... is currently loading", "estimated_time": 20.5}
+    public static long parseEstimatedTime(String errorBody) {
+        if (errorBody == null || errorBody.isEmpty()) {
+            return NO_HINT;
+        }
+
+        try {
+            JSONObject error = new JSONObject(errorBody);
+            if (error.has("estimated_time")) {
+                return Math.max(0, (long) (error.getDouble("estimated_time") * 1000));
+            }
+        } catch (Exception e) {
+            // Not a JSON error body
+        }
+
+        return NO_HINT;
+    }
+}
@@ -0,0 +1,215 @@
+package com.ai_autocreate.utils;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class StageGraph {
+    private static ExecutorService stageExecutor;
+
+    private final Map<String, Stage> stages = new LinkedHashMap<>();
+
+    public interface StageTask {
+        // Receives the outputs of the declared dependencies, keyed by stage id
+        JSONObject run(Map<String, JSONObject> inputs) throws Exception;
+    }
+
+    // Stages block on their own network fan-out, so they get their own pool
+    // instead of sharing ParallelRunner's, which would risk starving it
+    private static synchronized ExecutorService getStageExecutor() {
+        if (stageExecutor == null) {
+            stageExecutor = Executors.newCachedThreadPool(new ParallelRunner.NamedThreadFactory("stage"));
+        }
+        return stageExecutor;
+    }
+
+    public StageGraph addStage(String id, StageTask task, String... dependsOn) {
+        if (stages.containsKey(id)) {
+            throw new IllegalArgumentException("Duplicate stage: " + id);
+        }
+
+        for (String dependency : dependsOn) {
+            // Dependencies must be declared first, which also rules out cycles
+            if (!stages.containsKey(dependency)) {
+                throw new IllegalArgumentException("Stage " + id + " depends on unknown stage " + dependency);
+            }
+        }
+
+        stages.put(id, new Stage(id, task, Arrays.asList(dependsOn)));
+        return this;
+    }
+
+    public Result run() throws InterruptedException {
+        return run(CancellationToken.NONE);
+    }
+
+    // Cancelling the token cancels the running stages and throws InterruptedException;
+    // stage tasks should pass the same token to their own blocking work
+    public Result run(CancellationToken token) throws InterruptedException {
+        Map<String, JSONObject> outputs = Collections.synchronizedMap(new HashMap<String, JSONObject>());
+        Set<String> submitted = new HashSet<>();
+        final List<Future<StageOutcome>> running = new ArrayList<>();
+        ExecutorCompletionService<StageOutcome> completionService =
+            new ExecutorCompletionService<>(getStageExecutor());
+
+        // Cancelled stages land in the completion queue, which wakes take() below
+        Runnable cancelStages = new Runnable() {
+            @Override
+            public void run() {
+                synchronized (running) {
+                    for (Future<StageOutcome> future : running) {
+                        future.cancel(true);
+                    }
+                }
+            }
+        };
+        token.register(cancelStages);
+
+        String failedStageId = null;
+        int completed = 0;
+
+        try {
+            while (completed < stages.size()) {
+                if (token.isCancelled()) {
+                    throw new InterruptedException("Stages cancelled");
+                }
+
+                // Start every stage whose dependencies have all succeeded
+                for (Stage stage : stages.values()) {
+                    if (!submitted.contains(stage.id) && outputs.keySet().containsAll(stage.dependsOn)) {
+                        submitted.add(stage.id);
+                        synchronized (running) {
+                            running.add(completionService.submit(createCallable(stage, outputs)));
+                        }
+                    }
+                }
+
+                StageOutcome outcome = completionService.take().get();
+                outputs.put(outcome.stageId, outcome.output);
+                completed++;
+
+                if (!outcome.output.optBoolean("success", false)) {
+                    failedStageId = outcome.stageId;
+                    break;
+                }
+            }
+        } catch (ExecutionException e) {
+            throw new InterruptedException("Stage execution failed: " + e.getMessage());
+        } catch (CancellationException e) {
+            throw new InterruptedException("Stages cancelled");
+        } finally {
+            token.unregister(cancelStages);
+            if (completed < stages.size()) {
+                cancelStages.run();
+            }
+        }
+
+        return new Result(stages.keySet(), outputs, failedStageId);
+    }
+
+    private Callable<StageOutcome> createCallable(final Stage stage, final Map<String, JSONObject> outputs) {
+        final Map<String, JSONObject> inputs = new HashMap<>();
+        for (String dependency : stage.dependsOn) {
+            inputs.put(dependency, outputs.get(dependency));
+        }
+
+        return new Callable<StageOutcome>() {
+            @Override
+            public StageOutcome call() {
+                JSONObject output;
+                try {
+                    output = stage.task.run(inputs);
+                } catch (Exception e) {
+                    output = null;
+                }
+
+                if (output == null) {
+                    output = new JSONObject();
+                    try {
+                        output.put("step_id", stage.id);
+                        output.put("success", false);
+                        output.put("message", "Stage " + stage.id + " produced no result");
+                    } catch (JSONException ex) {
+                        // Ignore
+                    }
+                }
+
+                return new StageOutcome(stage.id, output);
+            }
+        };
+    }
+
+    private static class Stage {
+        final String id;
+        final StageTask task;
+        final List<String> dependsOn;
+
+        Stage(String id, StageTask task, List<String> dependsOn) {
+            this.id = id;
+            this.task = task;
+            this.dependsOn = dependsOn;
+        }
+    }
+
+    private static class StageOutcome {
+        final String stageId;
+        final JSONObject output;
+
+        StageOutcome(String stageId, JSONObject output) {
+            this.stageId = stageId;
+            this.output = output;
+        }
+    }
+
+    public static class Result {
+        private final List<String> stageOrder;
+        private final Map<String, JSONObject> outputs;
+        private final String failedStageId;
+
+        Result(Set<String> stageOrder, Map<String, JSONObject> outputs, String failedStageId) {
+            this.stageOrder = new ArrayList<>(stageOrder);
+            this.outputs = new HashMap<>(outputs);
+            this.failedStageId = failedStageId;
+        }
+
+        public boolean isSuccess() {
+            return failedStageId == null;
+        }
+
+        public String getFailedStageId() {
+            return failedStageId;
+        }
+
+        public JSONObject getOutput(String stageId) {
+            return outputs.get(stageId);
+        }
+
+        // Outputs of the stages that finished, in declaration order
+        public List<JSONObject> getOrderedOutputs() {
+            List<JSONObject> ordered = new ArrayList<>();
+            for (String stageId : stageOrder) {
+                JSONObject output = outputs.get(stageId);
+                if (output != null) {
+                    ordered.add(output);
+                }
+            }
+            return ordered;
+        }
+    }
+}
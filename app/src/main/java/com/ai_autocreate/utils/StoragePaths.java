@@ -61,6 +61,10 @@ public class StoragePaths {
         return getProjectDir(projectId) + "/checkpoints";
     }
 
+    public static String getProjectSegmentsDir(String projectId) {
+        return getProjectDir(projectId) + "/segments";
+    }
+
     public static boolean isExternalStorageAvailable() {
         String state = Environment.getExternalStorageState();
         return Environment.MEDIA_MOUNTED.equals(state);
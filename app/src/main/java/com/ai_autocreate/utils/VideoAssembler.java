@@ -0,0 +1,274 @@
+package com.ai_autocreate.utils;
+
+import android.content.Context;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// Builds a project's video one scene at a time. Every segment (a still image, its dialogue
+// clips and the dialogue burned in as subtitles) is an independent ffmpeg encode, and the
+// segments run in parallel through FFmpegScheduler's batch lane. The finished segments are
+// joined by the concat demuxer with -c copy, which only rewrites the container. All segments
+// use identical encode settings so that stream copy is valid. Encoded segments are
+// checkpointed against their inputs' paths, sizes and modification times, so after one scene
+// is edited only that segment is encoded again.
+public class VideoAssembler {
+    public static final long MIN_SEGMENT_MS = 5000;
+
+    private static final int WIDTH = 1280;
+    private static final int HEIGHT = 720;
+    private static final int FRAME_RATE = 25;
+    private static final int AUDIO_RATE = 44100;
+    private static final String FONT_FILE = "/system/fonts/Roboto-Regular.ttf";
+    private static final int SUBTITLE_LINE_LENGTH = 48;
+    // Part of every segment's checkpoint input; change it with the encode settings so old segments are redone
+    private static final String SEGMENT_FORMAT = "h264-1280x720-25fps-aac-44100-stereo-v1";
+
+    private final JSONLogger logger;
+    private final FFmpegRunner ffmpegRunner;
+
+    public VideoAssembler(Context context, FFmpegRunner ffmpegRunner) {
+        this.logger = new JSONLogger(context);
+        this.ffmpegRunner = ffmpegRunner;
+    }
+
+    public static class Segment {
+        private final String imagePath;
+        private final List<String> audioPaths;
+        private final String subtitle;
+
+        public Segment(String imagePath, List<String> audioPaths, String subtitle) {
+            this.imagePath = imagePath;
+            this.audioPaths = audioPaths;
+            this.subtitle = subtitle != null ? subtitle : "";
+        }
+    }
+
+    public interface ProgressListener {
+        void onProgress(int completed, int total);
+    }
+
+    // Returns {"success", "message", "output_path", "segments_encoded", "segments_reused"}.
+    // Progress counts encoded segments plus the final join.
+    public JSONObject assemble(final String projectId, final List<Segment> segments, File output,
+                               final ProgressListener listener, final CancellationToken token)
+        throws JSONException, InterruptedException {
+        JSONObject result = new JSONObject();
+        result.put("success", false);
+
+        final File segmentsDir = new File(StoragePaths.getProjectSegmentsDir(projectId));
+        segmentsDir.mkdirs();
+        final ProjectCheckpoint checkpoint = new ProjectCheckpoint(projectId);
+        final int total = segments.size() + 1;
+
+        final int[] reused = new int[1];
+        List<JSONObject> encoded = ParallelRunner.runOrdered(segments.size(),
+            FFmpegScheduler.getInstance().getMaxBatchRunning(),
+            new ParallelRunner.IndexedTask<JSONObject>() {
+                @Override
+                public JSONObject run(int index) throws Exception {
+                    Segment segment = segments.get(index);
+                    String input = describeSegment(segment);
+
+                    // Nothing this segment is made of has changed since it was encoded
+                    JSONObject done = checkpoint.loadUnit("segment", index, input);
+                    if (done != null) {
+                        synchronized (reused) {
+                            reused[0]++;
+                        }
+                        return done;
+                    }
+
+                    JSONObject segmentInfo = encodeSegment(projectId, segmentsDir, segment, index, token);
+                    if (segmentInfo != null) {
+                        checkpoint.saveUnit("segment", index, input, segmentInfo);
+                    }
+                    return segmentInfo;
+                }
+            },
+            new ParallelRunner.ProgressListener() {
+                @Override
+                public void onProgress(int index, int completed, int count) {
+                    if (listener != null) {
+                        listener.onProgress(completed, total);
+                    }
+                }
+            }, token);
+
+        List<String> segmentPaths = new ArrayList<>();
+        for (int i = 0; i < encoded.size(); i++) {
+            if (encoded.get(i) == null) {
+                result.put("message", "Failed to encode segment " + (i + 1));
+                return result;
+            }
+            segmentPaths.add(encoded.get(i).getString("path"));
+        }
+
+        // Join without re-encoding; the segments already share codecs and parameters
+        File segmentList = new File(segmentsDir, "segments.txt");
+        JSONLogger.writeToFile(segmentList, buildConcatList(segmentPaths));
+        FFmpegCommand command = new FFmpegCommand().overwrite();
+        command.addInput(segmentList.getAbsolutePath()).format("concat").option("-safe", 0);
+        command.addOutput(output.getAbsolutePath()).codec("copy").option("-movflags", "+faststart");
+
+        FFmpegRunner.FFmpegResult joined = ffmpegRunner.execute(command, FFmpegScheduler.LANE_BATCH, projectId, null, token);
+        if (joined == null || !joined.isSuccess()) {
+            if (!token.isCancelled()) {
+                result.put("message", joined != null ? "Joining segments failed with exit code " + joined.getExitCode()
+                           : "Joining segments failed");
+            }
+            return result;
+        }
+
+        if (listener != null) {
+            listener.onProgress(total, total);
+        }
+
+        result.put("success", true);
+        result.put("output_path", output.getAbsolutePath());
+        result.put("segments_encoded", segments.size() - reused[0]);
+        result.put("segments_reused", reused[0]);
+        result.put("message", "Video assembled from " + segments.size() + " segments");
+        return result;
+    }
+
+    private JSONObject encodeSegment(String projectId, File segmentsDir, Segment segment, int index,
+                                     CancellationToken token) throws JSONException {
+        File segmentFile = new File(segmentsDir, String.format(Locale.US, "segment_%03d.mp4", index));
+
+        FFmpegCommand command = new FFmpegCommand().overwrite();
+        FilterGraph graph = new FilterGraph();
+
+        // Input 0 is the still image; the rest are the dialogue clips, or silence to keep every segment's streams alike
+        FFmpegCommand.Input image = command.addInput(segment.imagePath).loop().frameRate(FRAME_RATE);
+        List<String> audioPads = new ArrayList<>();
+        if (segment.audioPaths.isEmpty()) {
+            FFmpegCommand.Input silence = command.addInput("anullsrc=r=" + AUDIO_RATE + ":cl=stereo")
+                .format("lavfi").duration(MIN_SEGMENT_MS);
+            audioPads.add(silence.stream("a"));
+        } else {
+            for (String audioPath : segment.audioPaths) {
+                audioPads.add(command.addInput(audioPath).stream("a"));
+            }
+        }
+
+        FilterGraph.Chain video = graph.chain(image.stream("v"))
+            .filter(new FilterGraph.Filter("scale").arg(WIDTH).arg(HEIGHT).option("force_original_aspect_ratio", "decrease"))
+            .filter(new FilterGraph.Filter("pad").arg(WIDTH).arg(HEIGHT).arg("(ow-iw)/2").arg("(oh-ih)/2"))
+            .filter(new FilterGraph.Filter("setsar").arg(1))
+            .filter(new FilterGraph.Filter("format").arg("yuv420p"));
+
+        // Subtitle text goes through a file so ffmpeg never expands anything in it
+        if (!segment.subtitle.isEmpty() && new File(FONT_FILE).exists() && ffmpegRunner.getCapabilities().hasFilter("drawtext")) {
+            File textFile = new File(segmentsDir, String.format(Locale.US, "segment_%03d.txt", index));
+            JSONLogger.writeToFile(textFile, wrapSubtitle(segment.subtitle));
+            video.filter(new FilterGraph.Filter("drawtext")
+                         .option("fontfile", FONT_FILE)
+                         .option("textfile", textFile.getAbsolutePath())
+                         .option("expansion", "none")
+                         .option("fontsize", 36)
+                         .option("fontcolor", "white")
+                         .option("box", 1)
+                         .option("boxcolor", "black@0.5")
+                         .option("boxborderw", 12)
+                         .option("x", "(w-text_w)/2")
+                         .option("y", "h-text_h-48"));
+        }
+        video.output("v");
+
+        FilterGraph.Chain audio = graph.chain(audioPads.toArray(new String[audioPads.size()]));
+        if (audioPads.size() > 1) {
+            audio.filter(new FilterGraph.Filter("concat").option("n", audioPads.size()).option("v", 0).option("a", 1));
+        }
+        // Short dialogue is padded with silence so every scene stays on screen for at least MIN_SEGMENT_MS
+        audio.filter(new FilterGraph.Filter("aformat").option("sample_rates", AUDIO_RATE).option("channel_layouts", "stereo"))
+            .filter(new FilterGraph.Filter("apad").option("whole_dur", String.format(Locale.US, "%.3f", MIN_SEGMENT_MS / 1000.0)))
+            .output("a");
+
+        command.setFilterGraph(graph);
+        String encoder = getVideoEncoder();
+        FFmpegCommand.Output segmentOutput = command.addOutput(segmentFile.getAbsolutePath())
+            .map("v")
+            .map("a")
+            .videoCodec(encoder);
+        if ("libx264".equals(encoder)) {
+            segmentOutput.option("-preset", "veryfast");
+        } else {
+            segmentOutput.option("-q:v", 3);
+        }
+        segmentOutput.option("-threads", FFmpegScheduler.getInstance().getThreadsPerJob())
+            .frameRate(FRAME_RATE)
+            .audioCodec("aac")
+            .option("-b:a", "128k")
+            .flag("-shortest");
+
+        FFmpegRunner.FFmpegResult result = ffmpegRunner.execute(command, FFmpegScheduler.LANE_BATCH, projectId, null, token);
+        if (result == null || !result.isSuccess()) {
+            if (!token.isCancelled()) {
+                logger.log("VideoAssembler", "Segment " + index + " failed: "
+                           + (result != null ? result.getOutput() : "ffmpeg did not run"));
+            }
+            segmentFile.delete();
+            return null;
+        }
+
+        JSONObject segmentInfo = new JSONObject();
+        segmentInfo.put("index", index);
+        segmentInfo.put("path", segmentFile.getAbsolutePath());
+        segmentInfo.put("size", segmentFile.length());
+        return segmentInfo;
+    }
+
+    // libx264 when the build has it, otherwise ffmpeg's built-in MPEG-4 encoder; either way
+    // every segment of a build uses the same one, so they can still be joined with stream copy
+    private String getVideoEncoder() {
+        return ffmpegRunner.getCapabilities().hasEncoder("libx264") ? "libx264" : "mpeg4";
+    }
+
+    // Identifies everything the segment is made of, including edits that keep the same file name
+    private String describeSegment(Segment segment) {
+        StringBuilder description = new StringBuilder(SEGMENT_FORMAT).append("-").append(getVideoEncoder()).append("\n");
+        description.append(describeFile(segment.imagePath)).append("\n");
+        for (String audioPath : segment.audioPaths) {
+            description.append(describeFile(audioPath)).append("\n");
+        }
+        description.append(segment.subtitle);
+        return description.toString();
+    }
+
+    private static String describeFile(String path) {
+        File file = new File(path);
+        return path + ":" + file.length() + ":" + file.lastModified();
+    }
+
+    private static String wrapSubtitle(String text) {
+        StringBuilder wrapped = new StringBuilder();
+        int lineLength = 0;
+        for (String word : text.trim().split("\\s+")) {
+            if (lineLength > 0 && lineLength + 1 + word.length() > SUBTITLE_LINE_LENGTH) {
+                wrapped.append("\n");
+                lineLength = 0;
+            } else if (lineLength > 0) {
+                wrapped.append(" ");
+                lineLength++;
+            }
+            wrapped.append(word);
+            lineLength += word.length();
+        }
+        return wrapped.toString();
+    }
+
+    // Input list for ffmpeg's concat demuxer
+    private static String buildConcatList(List<String> paths) {
+        StringBuilder list = new StringBuilder();
+        for (String path : paths) {
+            list.append("file '").append(path.replace("'", "'\\''")).append("'\n");
+        }
+        return list.toString();
+    }
+}
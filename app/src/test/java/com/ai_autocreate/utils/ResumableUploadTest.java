@@ -0,0 +1,366 @@
+package com.ai_autocreate.utils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+// Runs ResumableUpload against an in-process server that speaks the upload protocol and
+// checks offsets, checksums and what is (not) resent after an interrupted upload.
+public class ResumableUploadTest {
+    private static final long CHUNK_SIZE = 1024;
+
+    private FakeUploadServer server;
+    private File workDir;
+    private File stateDir;
+    private File file;
+    private byte[] content;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FakeUploadServer();
+        workDir = createTempDir();
+        stateDir = new File(workDir, "state");
+
+        // Four full chunks and a short last one
+        content = new byte[(int) (CHUNK_SIZE * 4 + 300)];
+        new Random(42).nextBytes(content);
+        file = new File(workDir, "clip.bin");
+        FileOutputStream output = new FileOutputStream(file);
+        try {
+            output.write(content);
+        } finally {
+            output.close();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+        deleteRecursively(workDir);
+        if (server.failure != null) {
+            throw new AssertionError("Server saw a bad request: " + server.failure);
+        }
+    }
+
+    @Test
+    public void uploadsEveryChunkAtItsOffset() throws Exception {
+        JSONObject result = newUpload().upload(server.endpoint, "", file, "project", null);
+
+        assertNotNull(result);
+        assertEquals(content.length, result.getInt("size"));
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4), server.chunkPuts);
+        assertArrayEquals(content, server.assembled());
+        assertEquals(0, countStateFiles());
+    }
+
+    @Test
+    public void resumeSendsOnlyChunksTheServerLacks() throws Exception {
+        // The third chunk is refused once, which ends the first attempt after two chunks
+        server.rejectOnce.add(2);
+        assertNull(newUpload().upload(server.endpoint, "", file, "project", null));
+        assertEquals(Arrays.asList(0, 1, 2), server.chunkPuts);
+        assertEquals(1, countStateFiles());
+
+        server.chunkPuts.clear();
+        final List<Long> progress = new ArrayList<>();
+        JSONObject result = newUpload().upload(server.endpoint, "", file, "project",
+            new FileChannelRequestBody.ProgressListener() {
+                @Override
+                public void onProgress(long bytesSent, long totalBytes) {
+                    progress.add(bytesSent);
+                }
+            });
+
+        assertNotNull(result);
+        assertEquals(1, server.sessionsCreated);
+        assertEquals(Arrays.asList(2, 3, 4), server.chunkPuts);
+        assertArrayEquals(content, server.assembled());
+        // Progress continues from the acknowledged bytes instead of restarting at zero
+        assertTrue(progress.get(0) >= 2 * CHUNK_SIZE);
+        assertEquals(content.length, (long) progress.get(progress.size() - 1));
+        assertEquals(0, countStateFiles());
+    }
+
+    @Test
+    public void serverDecidesWhatWasReceived() throws Exception {
+        server.rejectOnce.add(3);
+        assertNull(newUpload().upload(server.endpoint, "", file, "project", null));
+
+        // Chunk 1 was acknowledged locally but the server lost it
+        server.forget(1);
+        server.chunkPuts.clear();
+
+        assertNotNull(newUpload().upload(server.endpoint, "", file, "project", null));
+        assertEquals(Arrays.asList(1, 3, 4), server.chunkPuts);
+        assertArrayEquals(content, server.assembled());
+    }
+
+    @Test
+    public void forgottenSessionStartsOver() throws Exception {
+        server.rejectOnce.add(2);
+        assertNull(newUpload().upload(server.endpoint, "", file, "project", null));
+
+        server.forgetSessions();
+        server.chunkPuts.clear();
+
+        assertNotNull(newUpload().upload(server.endpoint, "", file, "project", null));
+        assertEquals(2, server.sessionsCreated);
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4), server.chunkPuts);
+        assertArrayEquals(content, server.assembled());
+    }
+
+    @Test
+    public void corruptedChunkIsResent() throws Exception {
+        server.corruptOnce.add(1);
+
+        assertNotNull(newUpload().upload(server.endpoint, "", file, "project", null));
+        assertEquals(Arrays.asList(0, 1, 1, 2, 3, 4), server.chunkPuts);
+        assertArrayEquals(content, server.assembled());
+    }
+
+    @Test
+    public void changedFileIsNotResumed() throws Exception {
+        server.rejectOnce.add(2);
+        assertNull(newUpload().upload(server.endpoint, "", file, "project", null));
+
+        // A different file under the same name must not reuse the old chunks
+        content[0] ^= 0x7f;
+        FileOutputStream output = new FileOutputStream(file);
+        try {
+            output.write(content);
+        } finally {
+            output.close();
+        }
+        assertTrue(file.setLastModified(file.lastModified() + 2000));
+        server.chunkPuts.clear();
+
+        assertNotNull(newUpload().upload(server.endpoint, "", file, "project", null));
+        assertEquals(2, server.sessionsCreated);
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4), server.chunkPuts);
+        assertArrayEquals(content, server.assembled());
+    }
+
+    private ResumableUpload newUpload() {
+        return new ResumableUpload(new JSONLogger(null, new File(workDir, "logs").getPath()), CHUNK_SIZE, stateDir);
+    }
+
+    private int countStateFiles() {
+        File[] files = stateDir.listFiles();
+        return files != null ? files.length : 0;
+    }
+
+    private static File createTempDir() throws IOException {
+        File dir = File.createTempFile("upload-test", "");
+        assertTrue(dir.delete());
+        assertTrue(dir.mkdirs());
+        return dir;
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
+    // Minimal server side of the protocol documented on ResumableUpload
+    private static class FakeUploadServer implements HttpHandler {
+        private static final Pattern CHUNK_PATH = Pattern.compile(".*/uploads/([^/]+)/chunks/(\\d+)");
+        private static final Pattern STATUS_PATH = Pattern.compile(".*/uploads/([^/]+)");
+        private static final Pattern COMPLETE_PATH = Pattern.compile(".*/uploads/([^/]+)/complete");
+        private static final Pattern CONTENT_RANGE = Pattern.compile("bytes (\\d+)-(\\d+)/(\\d+)");
+
+        final String endpoint;
+        final List<Integer> chunkPuts = new ArrayList<>();
+        final Set<Integer> rejectOnce = new HashSet<>();
+        final Set<Integer> corruptOnce = new HashSet<>();
+        int sessionsCreated = 0;
+        // The first protocol violation; assertions on the server thread can't fail the test directly
+        volatile Throwable failure;
+
+        private final HttpServer httpServer;
+        private String uploadId;
+        private long size;
+        private List<String> checksums;
+        private final Map<Integer, byte[]> received = new TreeMap<>();
+
+        FakeUploadServer() throws IOException {
+            httpServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            httpServer.createContext("/", this);
+            httpServer.start();
+            // A fresh endpoint per server, so circuit breaker state from other tests doesn't carry over
+            endpoint = "http://127.0.0.1:" + httpServer.getAddress().getPort() + "/models/test-" + System.nanoTime();
+        }
+
+        void stop() {
+            httpServer.stop(0);
+        }
+
+        synchronized void forget(int index) {
+            received.remove(index);
+        }
+
+        synchronized void forgetSessions() {
+            uploadId = null;
+            received.clear();
+        }
+
+        synchronized byte[] assembled() {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            for (byte[] chunk : received.values()) {
+                bytes.write(chunk, 0, chunk.length);
+            }
+            return bytes.toByteArray();
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                synchronized (this) {
+                    route(exchange);
+                }
+            } catch (Throwable e) {
+                if (failure == null) {
+                    failure = e;
+                }
+                // Not retryable, so the upload gives up right away
+                reply(exchange, 400, "{}");
+            } finally {
+                exchange.close();
+            }
+        }
+
+        private void route(HttpExchange exchange) throws Exception {
+            String method = exchange.getRequestMethod();
+            String path = exchange.getRequestURI().getPath();
+            byte[] body = readAll(exchange.getRequestBody());
+
+            Matcher chunk = CHUNK_PATH.matcher(path);
+            Matcher complete = COMPLETE_PATH.matcher(path);
+            Matcher status = STATUS_PATH.matcher(path);
+
+            if ("POST".equals(method) && path.endsWith("/uploads")) {
+                JSONObject request = new JSONObject(new String(body, "UTF-8"));
+                JSONArray sums = request.getJSONArray("chunks");
+                checksums = new ArrayList<>();
+                for (int i = 0; i < sums.length(); i++) {
+                    checksums.add(sums.getString(i));
+                }
+                size = request.getLong("size");
+                received.clear();
+                uploadId = "upload-" + (++sessionsCreated);
+                reply(exchange, 200, new JSONObject().put("upload_id", uploadId).toString());
+
+            } else if ("PUT".equals(method) && chunk.matches()) {
+                if (!chunk.group(1).equals(uploadId)) {
+                    reply(exchange, 404, "{}");
+                    return;
+                }
+                int index = Integer.parseInt(chunk.group(2));
+                chunkPuts.add(index);
+
+                if (rejectOnce.remove(index)) {
+                    reply(exchange, 400, "{}");
+                    return;
+                }
+                if (corruptOnce.remove(index)) {
+                    body[0] ^= 0x01;
+                }
+
+                Matcher range = CONTENT_RANGE.matcher(exchange.getRequestHeaders().getFirst("Content-Range"));
+                assertTrue(range.matches());
+                long first = Long.parseLong(range.group(1));
+                long last = Long.parseLong(range.group(2));
+                assertEquals(index * CHUNK_SIZE, first);
+                assertEquals(body.length, last - first + 1);
+                assertEquals(size, Long.parseLong(range.group(3)));
+
+                String sha = sha256(body);
+                if (!sha.equals(checksums.get(index)) || !sha.equals(exchange.getRequestHeaders().getFirst("X-Chunk-Sha256"))) {
+                    reply(exchange, 409, "{}");
+                    return;
+                }
+                received.put(index, body);
+                reply(exchange, 200, "{}");
+
+            } else if ("POST".equals(method) && complete.matches()) {
+                if (!complete.group(1).equals(uploadId) || received.size() != checksums.size()) {
+                    reply(exchange, 400, "{}");
+                    return;
+                }
+                reply(exchange, 200, new JSONObject().put("size", assembled().length).toString());
+
+            } else if ("GET".equals(method) && status.matches()) {
+                if (!status.group(1).equals(uploadId)) {
+                    reply(exchange, 404, "{}");
+                    return;
+                }
+                reply(exchange, 200, new JSONObject().put("received", new JSONArray(received.keySet())).toString());
+
+            } else {
+                reply(exchange, 404, "{}");
+            }
+        }
+
+        private static void reply(HttpExchange exchange, int code, String body) throws IOException {
+            byte[] bytes = body.getBytes("UTF-8");
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(code, bytes.length);
+            OutputStream output = exchange.getResponseBody();
+            output.write(bytes);
+            output.close();
+        }
+
+        private static byte[] readAll(InputStream input) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                bytes.write(buffer, 0, read);
+            }
+            return bytes.toByteArray();
+        }
+
+        private static String sha256(byte[] data) throws Exception {
+            StringBuilder hex = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(data)) {
+                hex.append(String.format("%02x", b & 0xff));
+            }
+            return hex.toString();
+        }
+    }
+}